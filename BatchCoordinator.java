@@ -0,0 +1,382 @@
+package final_project;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs one batch across several worker JVMs on this host, so a batch is not bounded by one heap
+ * and one bad image cannot take the whole run down.
+ *
+ * Each worker is a child JVM running a Processor (see runWorker) and talking to the coordinator
+ * over its stdin/stdout pipes, one line per message:
+ *   coordinator -> worker: "JOB <index> <path>", then "DONE" when the batch is finished
+ *   worker -> coordinator: "READY" once, then "OK <index> <pixels> <outputPath>" or
+ *                          "FAIL <index> <reason>" per job
+ * Work is pulled: a worker gets its next image only when it has finished the last one, so fast
+ * workers take more of the batch and no fixed split can leave one worker with all the big images.
+ *
+ * A worker whose pipe closes (it crashed, ran out of memory or was killed) is replaced, and the
+ * image it held goes back to the front of the queue. So does an image that has been running for
+ * longer than the stuck timeout: its worker is killed first. An image that takes down
+ * maxAttempts workers is reported as failed instead of being retried forever. A FAIL reply
+ * (e.g. an undecodable file) is final. Three workers in a row that die before saying READY take
+ * their slot out of the run.
+ */
+public class BatchCoordinator {
+
+    private static final int MAX_FAILED_STARTS = 3;
+
+    private final int workers;
+    private final int threadsPerWorker;
+    private final float sigma;
+    private final MainApp.GaussianBlur.Engine engine;
+    private volatile long stuckTimeoutNanos = TimeUnit.MINUTES.toNanos(2);
+    private volatile int maxAttempts = 2;
+    private volatile List<String> workerJvmOptions = ManagementFactory.getRuntimeMXBean().getInputArguments();
+    private List<Slot> lastSlots = List.of();
+
+    public BatchCoordinator(int workers, int threadsPerWorker, float sigma, MainApp.GaussianBlur.Engine engine) {
+        this.workers = workers;
+        this.threadsPerWorker = threadsPerWorker;
+        this.sigma = sigma;
+        this.engine = engine;
+    }
+
+    /** How long one image may run before its worker is considered stuck and killed. */
+    public void setStuckTimeout(long millis) {
+        this.stuckTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(millis);
+    }
+
+    /** Workers an image may take down (crash or stall) before it is given up on. */
+    public void setMaxAttempts(int maxAttempts) {
+        this.maxAttempts = maxAttempts;
+    }
+
+    /** JVM options for the workers, e.g. -Xmx; by default the coordinator's own. */
+    public void setWorkerJvmOptions(List<String> options) {
+        this.workerJvmOptions = List.copyOf(options);
+    }
+
+    /**
+     * Blurs every image into outputDirectory across the workers and returns the combined result:
+     * output paths, pixels, failures and wall-clock time. getReport() breaks it down per worker.
+     */
+    public MainApp.ProcessingResult run(List<String> imagePaths, String outputDirectory) throws InterruptedException {
+        long startTime = System.nanoTime();
+        new File(outputDirectory).mkdirs();
+        Batch batch = new Batch(outputDirectory);
+        for (int i = 0; i < imagePaths.size(); i++) {
+            batch.queue.add(new Job(i, imagePaths.get(i)));
+        }
+        batch.remaining.set(imagePaths.size());
+
+        List<Slot> slots = new ArrayList<>();
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < workers; i++) {
+            Slot slot = new Slot(i);
+            slots.add(slot);
+            Thread thread = new Thread(() -> runSlot(slot, batch), "batch-worker-" + i);
+            threads.add(thread);
+            thread.start();
+        }
+        lastSlots = slots;
+
+        ScheduledExecutorService watchdog = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "batch-watchdog");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long checkMillis = Math.max(10, Math.min(1000, TimeUnit.NANOSECONDS.toMillis(stuckTimeoutNanos) / 4));
+        watchdog.scheduleWithFixedDelay(() -> killStuck(slots), checkMillis, checkMillis, TimeUnit.MILLISECONDS);
+        try {
+            for (Thread thread : threads) {
+                thread.join();
+            }
+        } finally {
+            watchdog.shutdownNow();
+            for (Slot slot : slots) {
+                Process process = slot.process;
+                if (process != null) {
+                    process.destroyForcibly();
+                }
+            }
+        }
+
+        // Left over only when every slot gave up on starting workers
+        for (Job job = batch.queue.poll(); job != null; job = batch.queue.poll()) {
+            batch.fail(job, "no worker could be started");
+        }
+        long endTime = System.nanoTime();
+        long pixels = slots.stream().mapToLong(s -> s.pixels).sum();
+        return new MainApp.ProcessingResult(List.of(), new ArrayList<>(batch.outputPaths), pixels,
+                batch.failures.get(), endTime - startTime);
+    }
+
+    /** Per-worker table of the last run: restarts, images, failures, crashes and throughput. */
+    public String getReport() {
+        StringBuilder report = new StringBuilder(String.format(Locale.ROOT, "%-7s %7s %7s %7s %8s %6s %10s %9s %9s%n",
+                "Worker", "Starts", "Images", "Failed", "Crashes", "Stuck", "MPixels", "Busy s", "MPix/s"));
+        for (Slot slot : lastSlots) {
+            double busySeconds = slot.busyNanos / 1e9;
+            report.append(String.format(Locale.ROOT, "%-7d %7d %7d %7d %8d %6d %10.1f %9.2f %9.2f%n",
+                    slot.index, slot.starts, slot.images, slot.failures, slot.crashes, slot.stuckKills,
+                    slot.pixels / 1e6, busySeconds, busySeconds > 0 ? slot.pixels / 1e6 / busySeconds : 0));
+        }
+        return report.toString();
+    }
+
+    private void runSlot(Slot slot, Batch batch) {
+        int failedStarts = 0;
+        while (batch.remaining.get() > 0 && failedStarts < MAX_FAILED_STARTS) {
+            Process process;
+            try {
+                process = startWorker(batch.outputDirectory);
+            } catch (IOException e) {
+                System.err.println("Could not start worker " + slot.index + ": " + e.getMessage());
+                failedStarts++;
+                continue;
+            }
+            slot.process = process;
+            slot.starts++;
+            try (BufferedReader replies = new BufferedReader(
+                         new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8));
+                 BufferedWriter commands = new BufferedWriter(
+                         new OutputStreamWriter(process.getOutputStream(), StandardCharsets.UTF_8))) {
+                if (!"READY".equals(replies.readLine())) {
+                    failedStarts++;
+                    continue;
+                }
+                failedStarts = 0;
+                for (Job job = batch.next(); job != null; job = batch.next()) {
+                    slot.jobStartNanos = System.nanoTime();
+                    slot.current = job;
+                    commands.write("JOB " + job.index + " " + job.path + "\n");
+                    commands.flush();
+                    String reply = readReply(replies, job);
+                    slot.busyNanos += System.nanoTime() - slot.jobStartNanos;
+                    slot.current = null;
+                    if (reply == null) {
+                        slot.crashes++;
+                        batch.retry(job, maxAttempts);
+                        break;
+                    }
+                    if (reply.startsWith("OK ")) {
+                        String[] parts = reply.split(" ", 4);
+                        slot.images++;
+                        slot.pixels += Long.parseLong(parts[2]);
+                        batch.succeed(parts[3]);
+                    } else {
+                        // The worker has already logged why
+                        slot.failures++;
+                        batch.failed();
+                    }
+                }
+                if (batch.remaining.get() == 0) {
+                    commands.write("DONE\n");
+                    commands.flush();
+                    process.waitFor(10, TimeUnit.SECONDS);
+                }
+            } catch (IOException e) {
+                // The pipe broke while sending; treated like a crash below
+                Job job = slot.current;
+                slot.current = null;
+                if (job != null) {
+                    slot.crashes++;
+                    batch.retry(job, maxAttempts);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } finally {
+                process.destroyForcibly();
+                slot.process = null;
+            }
+        }
+    }
+
+    // The worker's reply to job, or null when its pipe closed first
+    private static String readReply(BufferedReader replies, Job job) throws IOException {
+        String reply = replies.readLine();
+        if (reply == null) {
+            return null;
+        }
+        String[] parts = reply.split(" ", 3);
+        if (parts.length < 3 || !parts[1].equals(String.valueOf(job.index))
+                || !(parts[0].equals("OK") && parts[2].contains(" ") || parts[0].equals("FAIL"))) {
+            throw new IOException("Unexpected reply from worker: " + reply);
+        }
+        return reply;
+    }
+
+    private void killStuck(List<Slot> slots) {
+        long now = System.nanoTime();
+        for (Slot slot : slots) {
+            Process process = slot.process;
+            if (slot.current != null && process != null && now - slot.jobStartNanos > stuckTimeoutNanos) {
+                System.err.println("Worker " + slot.index + " stuck on " + slot.current.path + ", restarting it");
+                slot.stuckKills++;
+                process.destroyForcibly();
+            }
+        }
+    }
+
+    private Process startWorker(String outputDirectory) throws IOException {
+        List<String> command = new ArrayList<>();
+        command.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+        command.addAll(workerJvmOptions);
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(BatchCoordinator.class.getName());
+        command.add("--worker");
+        command.add(Float.toString(sigma));
+        command.add(engine.name());
+        command.add(Integer.toString(threadsPerWorker));
+        command.add(outputDirectory);
+        return new ProcessBuilder(command).redirectError(ProcessBuilder.Redirect.INHERIT).start();
+    }
+
+    /** Worker entry point: --worker <sigma> <engine> <threadCount> <outputDir> */
+    public static void main(String[] args) throws IOException {
+        if (args.length != 5 || !args[0].equals("--worker")) {
+            System.err.println("Usage: BatchCoordinator --worker <sigma> <engine> <threadCount> <outputDir>"
+                    + " (started by the coordinator; see MainApp --shard)");
+            System.exit(2);
+        }
+        runWorker(Float.parseFloat(args[1]), MainApp.GaussianBlur.Engine.valueOf(args[2]),
+                Integer.parseInt(args[3]), args[4]);
+    }
+
+    /**
+     * Serves jobs from stdin until DONE or end of input. stdout carries only protocol lines;
+     * anything else the process prints goes to stderr.
+     */
+    static void runWorker(float sigma, MainApp.GaussianBlur.Engine engine, int threads, String outputDirectory)
+            throws IOException {
+        PrintStream channel = new PrintStream(new FileOutputStream(FileDescriptor.out), true, StandardCharsets.UTF_8);
+        System.setOut(System.err);
+        BufferedReader commands = new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8));
+        MainApp.Processor processor = new MainApp.Processor(sigma, threads, engine);
+        try {
+            channel.println("READY");
+            for (String line = commands.readLine(); line != null && !line.equals("DONE"); line = commands.readLine()) {
+                String[] parts = line.split(" ", 3);
+                long pixelsBefore = processor.getMetrics().count(Metrics.PIXELS_PROCESSED);
+                try {
+                    String output = processor.submitToFile(parts[2], outputDirectory).join();
+                    long pixels = processor.getMetrics().count(Metrics.PIXELS_PROCESSED) - pixelsBefore;
+                    channel.println("OK " + parts[1] + " " + pixels + " " + output);
+                } catch (CompletionException e) {
+                    Throwable cause = e.getCause() != null ? e.getCause() : e;
+                    if (cause instanceof Error) {
+                        // Out of memory and the like: let the coordinator retry on a fresh worker
+                        System.err.println("Worker failed on " + parts[2] + ": " + cause);
+                        System.exit(1);
+                    }
+                    channel.println("FAIL " + parts[1] + " " + String.valueOf(cause.getMessage()).replace('\n', ' '));
+                }
+            }
+        } finally {
+            processor.shutdown();
+        }
+    }
+
+    private static final class Job {
+        final int index;
+        final String path;
+        int attempts;
+
+        Job(int index, String path) {
+            this.index = index;
+            this.path = path;
+        }
+    }
+
+    // Shared state of one run
+    private static final class Batch {
+        final String outputDirectory;
+        final BlockingDeque<Job> queue = new LinkedBlockingDeque<>();
+        // Jobs without a final outcome yet, queued or running
+        final AtomicInteger remaining = new AtomicInteger();
+        final AtomicInteger failures = new AtomicInteger();
+        final List<String> outputPaths = Collections.synchronizedList(new ArrayList<>());
+
+        Batch(String outputDirectory) {
+            this.outputDirectory = outputDirectory;
+        }
+
+        // The next job, waiting while others are still running (they may come back); null when all are done
+        Job next() throws InterruptedException {
+            while (true) {
+                Job job = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (job != null || remaining.get() == 0) {
+                    return job;
+                }
+            }
+        }
+
+        void succeed(String outputPath) {
+            outputPaths.add(outputPath);
+            remaining.decrementAndGet();
+        }
+
+        void fail(Job job, String reason) {
+            System.err.println("Error processing " + job.path + ": " + reason);
+            failed();
+        }
+
+        void failed() {
+            failures.incrementAndGet();
+            remaining.decrementAndGet();
+        }
+
+        // After the job's worker died: back to the front of the queue, unless it has had its chances
+        void retry(Job job, int maxAttempts) {
+            if (++job.attempts >= maxAttempts) {
+                fail(job, "took down " + job.attempts + " workers");
+            } else {
+                queue.addFirst(job);
+            }
+        }
+    }
+
+    // One worker position; its process is replaced when it dies
+    private static final class Slot {
+        final int index;
+        volatile Process process;
+        volatile Job current;
+        volatile long jobStartNanos;
+        // Only the watchdog writes it
+        volatile int stuckKills;
+        // Written by the slot's own thread, read by getReport() after the run
+        int starts;
+        int images;
+        int failures;
+        int crashes;
+        long pixels;
+        long busyNanos;
+
+        Slot(int index) {
+            this.index = index;
+        }
+    }
+}
@@ -0,0 +1,385 @@
+package final_project;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.awt.Dimension;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.*;
+import javax.imageio.ImageIO;
+
+/**
+ * Headless blur service on the JDK's built-in HTTP server, bound to the loopback interface only.
+ * One JVM stays up, so GaussianBlur kernels and the compute pool stay warm between requests.
+ *
+ *   POST /blur?sigma=2&engine=SEPARABLE&format=png   body: image bytes, response: blurred image
+ *   GET  /metrics                                     Metrics snapshot as JSON
+ *   GET  /health
+ *
+ * Admission is bounded twice. At most maxInFlight requests are read at once; the rest are
+ * answered 503 with Retry-After before their body is read. An admitted request's image size is
+ * then read from its header and charged against a budget of pixels in flight before anything is
+ * decoded: an image larger than the whole budget is refused with 413, one that does not fit
+ * beside the images already in flight with 503. The budget defaults to a quarter of the maximum
+ * heap at PIXEL_BYTES per pixel, so a few huge images cannot exhaust the heap any more than many
+ * small ones. Admitted images are micro-batched: the dispatcher collects requests for up to
+ * batchWindowMicros and hands the batch to the shared pool in one go, grouping small images so
+ * each worker blurs several of them sequentially instead of forking tiles for every one.
+ */
+public class BlurServer implements Closeable {
+
+    // Images below this size are blurred whole by one worker; larger ones are tiled on the pool
+    private static final long SMALL_IMAGE_PIXELS = 1 << 20;
+    // Distinct (sigma, engine) kernels kept warm; further ones are built per request
+    private static final int MAX_CACHED_BLURS = 64;
+    private static final float MAX_SIGMA = 64f;
+    // Heap estimate per pixel in flight: the decoded and blurred images, 4 bytes each, plus the
+    // engines' float working planes
+    private static final long PIXEL_BYTES = 32;
+
+    private final HttpServer server;
+    private final ExecutorService handlers;
+    private final ForkJoinPool pool;
+    private final int threadCount;
+    private final Semaphore admission;
+    private final Semaphore pixelBudget;
+    private final int maxPixelsInFlight;
+    private final int maxBatch;
+    private final long batchWindowNanos;
+    private final long maxBodyBytes;
+    private final BlockingQueue<Job> jobs = new LinkedBlockingQueue<>();
+    private final Map<String, MainApp.GaussianBlur> blurs = new ConcurrentHashMap<>();
+    private final Metrics metrics = new Metrics();
+    private final Thread dispatcher;
+    private volatile boolean closed;
+
+    public BlurServer(int port, int threadCount) throws IOException {
+        this(port, threadCount, 4 * threadCount, 2 * threadCount, 2000, 64L << 20,
+                (int) Math.min(Integer.MAX_VALUE, Runtime.getRuntime().maxMemory() / 4 / PIXEL_BYTES));
+    }
+
+    public BlurServer(int port, int threadCount, int maxInFlight, int maxBatch, long batchWindowMicros,
+                      long maxBodyBytes, int maxPixelsInFlight) throws IOException {
+        this.threadCount = threadCount;
+        this.pool = MainApp.Processor.newComputePool(threadCount);
+        this.admission = new Semaphore(maxInFlight);
+        this.pixelBudget = new Semaphore(maxPixelsInFlight);
+        this.maxPixelsInFlight = maxPixelsInFlight;
+        this.maxBatch = maxBatch;
+        this.batchWindowNanos = TimeUnit.MICROSECONDS.toNanos(batchWindowMicros);
+        this.maxBodyBytes = maxBodyBytes;
+
+        // Handlers mostly wait on I/O and on their job; the extra threads are there to turn
+        // excess requests away quickly while every admitted one is still busy
+        this.handlers = Executors.newFixedThreadPool(2 * maxInFlight);
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        server.setExecutor(handlers);
+        server.createContext("/blur", this::handleBlur);
+        server.createContext("/metrics", exchange ->
+                respond(exchange, 200, "application/json", metrics.getJson().getBytes(StandardCharsets.UTF_8)));
+        server.createContext("/health", exchange ->
+                respond(exchange, 200, "text/plain", "ok\n".getBytes(StandardCharsets.UTF_8)));
+
+        metrics.gauge("server.queueDepth", jobs::size);
+        metrics.gauge("server.inFlight", () -> maxInFlight - admission.availablePermits());
+        metrics.gauge("server.pixelsInFlight", () -> maxPixelsInFlight - pixelBudget.availablePermits());
+        metrics.gauge("pool.activeThreads", pool::getActiveThreadCount);
+        this.dispatcher = new Thread(this::dispatchLoop, "blur-server-dispatcher");
+        dispatcher.setDaemon(true);
+    }
+
+    public void start() {
+        dispatcher.start();
+        server.start();
+        metrics.register("BlurServer");
+    }
+
+    /** The bound port, useful when the server was created with port 0. */
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    public Metrics getMetrics() {
+        return metrics;
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        server.stop(1);
+        dispatcher.interrupt();
+        for (Job job = jobs.poll(); job != null; job = jobs.poll()) {
+            job.result.completeExceptionally(new CancellationException("Server stopped"));
+        }
+        handlers.shutdown();
+        pool.shutdown();
+        metrics.unregister();
+    }
+
+    private void handleBlur(HttpExchange exchange) throws IOException {
+        long start = System.nanoTime();
+        try (exchange) {
+            if (!exchange.getRequestMethod().equals("POST")) {
+                exchange.getResponseHeaders().set("Allow", "POST");
+                respondText(exchange, 405, "Use POST with the image as the request body");
+                return;
+            }
+            if (!admission.tryAcquire()) {
+                metrics.increment("requests.rejected");
+                exchange.getResponseHeaders().set("Retry-After", "1");
+                respondText(exchange, 503, "Server busy");
+                return;
+            }
+            try {
+                serveBlur(exchange);
+            } finally {
+                admission.release();
+                metrics.record("request", System.nanoTime() - start);
+            }
+        }
+    }
+
+    private void serveBlur(HttpExchange exchange) throws IOException {
+        Map<String, String> query = parseQuery(exchange.getRequestURI().getRawQuery());
+        MainApp.GaussianBlur blur;
+        String format = query.getOrDefault("format", "png").toLowerCase(Locale.ROOT);
+        try {
+            float sigma = Float.parseFloat(query.getOrDefault("sigma", "2"));
+            if (!(sigma > 0 && sigma <= MAX_SIGMA)) {
+                throw new IllegalArgumentException("sigma must be in (0, " + MAX_SIGMA + "]");
+            }
+            MainApp.GaussianBlur.Engine engine = MainApp.GaussianBlur.Engine.valueOf(
+                    query.getOrDefault("engine", "SEPARABLE").toUpperCase(Locale.ROOT));
+            if (!ImageCodec.canWrite(format)) {
+                throw new IllegalArgumentException("Unsupported output format: " + format);
+            }
+            blur = blurFor(sigma, engine);
+        } catch (IllegalArgumentException e) {
+            respondText(exchange, 400, e.getMessage());
+            return;
+        }
+
+        String declaredLength = exchange.getRequestHeaders().getFirst("Content-Length");
+        if (declaredLength != null) {
+            long length;
+            try {
+                length = Long.parseLong(declaredLength.trim());
+            } catch (NumberFormatException e) {
+                respondText(exchange, 400, "Malformed Content-Length: " + declaredLength);
+                return;
+            }
+            if (length > maxBodyBytes) {
+                respondText(exchange, 413, "Image larger than " + maxBodyBytes + " bytes");
+                return;
+            }
+        }
+        byte[] body;
+        try (InputStream in = exchange.getRequestBody()) {
+            body = in.readNBytes((int) Math.min(Integer.MAX_VALUE - 8, maxBodyBytes + 1));
+        }
+        if (body.length > maxBodyBytes) {
+            respondText(exchange, 413, "Image larger than " + maxBodyBytes + " bytes");
+            return;
+        }
+
+        Dimension size;
+        try {
+            size = ImageCodec.size(body);
+        } catch (IOException | RuntimeException e) {
+            metrics.increment(Metrics.IMAGES_FAILED);
+            respondText(exchange, 415, "Unsupported or corrupt image");
+            return;
+        }
+        long pixels = (long) size.width * size.height;
+        if (pixels > maxPixelsInFlight) {
+            metrics.increment("requests.tooLarge");
+            respondText(exchange, 413, "Image of " + size.width + "x" + size.height
+                    + " exceeds the server's budget of " + maxPixelsInFlight + " pixels");
+            return;
+        }
+        if (!pixelBudget.tryAcquire((int) pixels)) {
+            metrics.increment("requests.rejected");
+            exchange.getResponseHeaders().set("Retry-After", "1");
+            respondText(exchange, 503, "Server busy");
+            return;
+        }
+        try {
+            blurAndRespond(exchange, blur, format, body);
+        } finally {
+            pixelBudget.release((int) pixels);
+        }
+    }
+
+    private void blurAndRespond(HttpExchange exchange, MainApp.GaussianBlur blur, String format, byte[] body)
+            throws IOException {
+        long decodeStart = System.nanoTime();
+        BufferedImage image;
+        try {
+            image = ImageCodec.read(body, 0, ImageCodec.INT_RGB);
+        } catch (IOException | RuntimeException e) {
+            metrics.increment(Metrics.IMAGES_FAILED);
+            respondText(exchange, 415, "Unsupported or corrupt image");
+            return;
+        }
+        metrics.record(Metrics.STAGE_DECODE, System.nanoTime() - decodeStart);
+
+        Job job = new Job(blur, image);
+        jobs.add(job);
+        BufferedImage blurred;
+        try {
+            blurred = job.result.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            respondText(exchange, 503, "Server stopping");
+            return;
+        } catch (ExecutionException | CancellationException e) {
+            metrics.increment(Metrics.IMAGES_FAILED);
+            Throwable cause = e.getCause() != null ? e.getCause() : e;
+            respondText(exchange, 500, "Blur failed: " + cause.getMessage());
+            return;
+        }
+
+        long encodeStart = System.nanoTime();
+        ByteArrayOutputStream encoded = new ByteArrayOutputStream(body.length);
+        if (!ImageIO.write(toWritable(blurred, format), format, encoded)) {
+            respondText(exchange, 500, "Could not encode " + format);
+            return;
+        }
+        metrics.record(Metrics.STAGE_ENCODE, System.nanoTime() - encodeStart);
+        metrics.increment(Metrics.IMAGES_PROCESSED);
+        metrics.add(Metrics.PIXELS_PROCESSED, (long) image.getWidth() * image.getHeight());
+        respond(exchange, 200, "image/" + format, encoded.toByteArray());
+    }
+
+    // Kernels are built once per (sigma, engine) and shared by every request that asks for them
+    private MainApp.GaussianBlur blurFor(float sigma, MainApp.GaussianBlur.Engine engine) {
+        String key = Float.floatToIntBits(sigma) + ":" + engine;
+        MainApp.GaussianBlur blur = blurs.get(key);
+        if (blur == null) {
+            blur = new MainApp.GaussianBlur(sigma, engine);
+            blur.setMetrics(metrics);
+            if (blurs.size() < MAX_CACHED_BLURS) {
+                MainApp.GaussianBlur existing = blurs.putIfAbsent(key, blur);
+                blur = existing != null ? existing : blur;
+            }
+        }
+        return blur;
+    }
+
+    private void dispatchLoop() {
+        List<Job> batch = new ArrayList<>();
+        while (!closed) {
+            try {
+                batch.add(jobs.take());
+                long deadline = System.nanoTime() + batchWindowNanos;
+                while (batch.size() < maxBatch) {
+                    Job next = jobs.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+            } catch (InterruptedException e) {
+                break;
+            }
+            dispatch(batch);
+            batch.clear();
+        }
+    }
+
+    /**
+     * Large images are tiled across the pool one by one; small ones are dealt round-robin into
+     * at most threadCount groups, each blurred sequentially by a single worker.
+     */
+    private void dispatch(List<Job> batch) {
+        metrics.increment("server.batches");
+        metrics.add("server.batchedRequests", batch.size());
+        List<List<Job>> groups = new ArrayList<>();
+        int smallCount = 0;
+        for (Job job : batch) {
+            if ((long) job.image.getWidth() * job.image.getHeight() >= SMALL_IMAGE_PIXELS) {
+                pool.execute(() -> run(job, () -> job.blur.applyParallel(job.image, pool)));
+            } else {
+                if (groups.size() < threadCount) {
+                    groups.add(new ArrayList<>());
+                }
+                groups.get(smallCount++ % threadCount).add(job);
+            }
+        }
+        for (List<Job> group : groups) {
+            pool.execute(() -> {
+                for (Job job : group) {
+                    run(job, () -> job.blur.applySequential(job.image));
+                }
+            });
+        }
+    }
+
+    private void run(Job job, Callable<BufferedImage> work) {
+        long start = System.nanoTime();
+        try {
+            job.result.complete(work.call());
+            metrics.record(Metrics.STAGE_BLUR, System.nanoTime() - start);
+        } catch (Throwable t) {
+            job.result.completeExceptionally(t);
+        }
+    }
+
+    // JPEG and BMP writers reject images with alpha
+    private static BufferedImage toWritable(BufferedImage image, String format) {
+        if (!image.getColorModel().hasAlpha() || format.equals("png") || format.equals("gif")) {
+            return image;
+        }
+        BufferedImage rgb = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_INT_RGB);
+        rgb.getGraphics().drawImage(image, 0, 0, null);
+        return rgb;
+    }
+
+    private static Map<String, String> parseQuery(String rawQuery) {
+        Map<String, String> query = new HashMap<>();
+        if (rawQuery == null) {
+            return query;
+        }
+        for (String pair : rawQuery.split("&")) {
+            int eq = pair.indexOf('=');
+            if (eq > 0) {
+                query.put(URLDecoder.decode(pair.substring(0, eq), StandardCharsets.UTF_8),
+                        URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8));
+            }
+        }
+        return query;
+    }
+
+    private static void respondText(HttpExchange exchange, int status, String message) throws IOException {
+        respond(exchange, status, "text/plain; charset=utf-8", (message + "\n").getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void respond(HttpExchange exchange, int status, String contentType, byte[] body)
+            throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    private static final class Job {
+        final MainApp.GaussianBlur blur;
+        final BufferedImage image;
+        final CompletableFuture<BufferedImage> result = new CompletableFuture<>();
+
+        Job(MainApp.GaussianBlur blur, BufferedImage image) {
+            this.blur = blur;
+            this.image = image;
+        }
+    }
+}
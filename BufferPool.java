@@ -0,0 +1,177 @@
+package final_project;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.awt.image.DirectColorModel;
+import java.awt.image.Raster;
+import java.awt.image.WritableRaster;
+import java.util.Deque;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Size-keyed pool of the large working buffers of a batch: output images and the int[]/float[]
+ * planes the convolution engines fill per image or per tile (long[] for the FIXED engine). A
+ * batch of same-sized photos keeps asking for the same few sizes, so once the first images have
+ * been through, buffers are leased and returned instead of allocated, and the steady state
+ * allocates next to nothing large.
+ *
+ * Arrays are keyed by exact length, so a leased array holds exactly what was asked for (as
+ * Filter.Buffer requires). Leased contents are undefined: callers must write before they read.
+ * At most maxBytes are held; returning a buffer that does not fit first evicts buffers of other
+ * sizes (a batch that moves on to another image size stops paying for the old one), and drops the
+ * buffer if it still does not fit. Thread-safe. A buffer must not be used after it is released,
+ * nor released twice.
+ */
+public class BufferPool {
+
+    private static final int[] RGB_MASKS = {0xFF0000, 0xFF00, 0xFF};
+    private static final DirectColorModel RGB = new DirectColorModel(24, RGB_MASKS[0], RGB_MASKS[1], RGB_MASKS[2]);
+
+    private final long maxBytes;
+    // Most recently returned first, so a lease gets the array most likely still in cache
+    private final Map<Integer, Deque<int[]>> ints = new ConcurrentHashMap<>();
+    private final Map<Integer, Deque<float[]>> floats = new ConcurrentHashMap<>();
+    private final Map<Integer, Deque<long[]>> longs = new ConcurrentHashMap<>();
+    private final AtomicLong pooledBytes = new AtomicLong();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    public BufferPool(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /** A quarter of the maximum heap, at most 512 MB. */
+    public static long defaultMaxBytes() {
+        return Math.min(512L << 20, Runtime.getRuntime().maxMemory() / 4);
+    }
+
+    public int[] leaseInts(int length) {
+        int[] array = poll(ints, length, 4L * length);
+        return array != null ? array : new int[length];
+    }
+
+    public float[] leaseFloats(int length) {
+        float[] array = poll(floats, length, 4L * length);
+        return array != null ? array : new float[length];
+    }
+
+    public long[] leaseLongs(int length) {
+        long[] array = poll(longs, length, 8L * length);
+        return array != null ? array : new long[length];
+    }
+
+    /**
+     * A TYPE_INT_RGB image backed by a pooled int[]; GaussianBlur.rgbPixels returns that array
+     * without copying. Its pixels are undefined.
+     */
+    public BufferedImage leaseImage(int width, int height) {
+        int[] pixels = leaseInts(width * height);
+        WritableRaster raster = Raster.createPackedRaster(new DataBufferInt(pixels, pixels.length),
+                width, height, width, RGB_MASKS, null);
+        return new BufferedImage(RGB, raster, false, null);
+    }
+
+    public void release(int[] array) {
+        offer(ints, array.length, array, 4L * array.length);
+    }
+
+    public void release(float[] array) {
+        offer(floats, array.length, array, 4L * array.length);
+    }
+
+    public void release(long[] array) {
+        offer(longs, array.length, array, 8L * array.length);
+    }
+
+    /**
+     * Returns the pixels of a plain TYPE_INT_RGB image (leased or not) to the pool; other images
+     * are left to the garbage collector.
+     */
+    public void release(BufferedImage image) {
+        WritableRaster raster = image.getRaster();
+        if (image.getType() == BufferedImage.TYPE_INT_RGB && raster.getParent() == null
+                && raster.getDataBuffer() instanceof DataBufferInt
+                && raster.getDataBuffer().getSize() == image.getWidth() * image.getHeight()) {
+            release(((DataBufferInt) raster.getDataBuffer()).getData());
+        }
+    }
+
+    /** Bytes currently held for future leases. */
+    public long getPooledBytes() {
+        return pooledBytes.get();
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    /** Leases served from the pool. */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /** Leases that had to allocate. */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /** Drops every pooled buffer. */
+    public void clear() {
+        boolean evicted;
+        do {
+            evicted = evictOther(null, -1);
+        } while (evicted);
+    }
+
+    private <T> T poll(Map<Integer, Deque<T>> pool, int length, long bytes) {
+        Deque<T> free = pool.get(length);
+        T array = free == null ? null : free.pollFirst();
+        if (array == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        pooledBytes.addAndGet(-bytes);
+        hits.incrementAndGet();
+        return array;
+    }
+
+    private <T> void offer(Map<Integer, Deque<T>> pool, int length, T array, long bytes) {
+        if (length == 0 || bytes > maxBytes) {
+            return;
+        }
+        while (true) {
+            long current = pooledBytes.get();
+            if (current + bytes <= maxBytes) {
+                if (pooledBytes.compareAndSet(current, current + bytes)) {
+                    break;
+                }
+            } else if (!evictOther(pool, length)) {
+                return;
+            }
+        }
+        pool.computeIfAbsent(length, k -> new ConcurrentLinkedDeque<>()).offerFirst(array);
+    }
+
+    // Drops the least recently returned buffer of any size class other than (keep, keepLength)
+    private boolean evictOther(Map<?, ?> keep, int keepLength) {
+        return evictFrom(ints, 4, keep, keepLength) || evictFrom(floats, 4, keep, keepLength)
+                || evictFrom(longs, 8, keep, keepLength);
+    }
+
+    private boolean evictFrom(Map<Integer, ? extends Deque<?>> pool, int elementBytes, Map<?, ?> keep, int keepLength) {
+        for (Map.Entry<Integer, ? extends Deque<?>> entry : pool.entrySet()) {
+            if (pool == keep && entry.getKey() == keepLength) {
+                continue;
+            }
+            Object array = entry.getValue().pollLast();
+            if (array != null) {
+                pooledBytes.addAndGet(-(long) elementBytes * entry.getKey());
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,230 @@
+package final_project;
+
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * An image operation that can be run on any rectangular window of an image, given enough
+ * surrounding input. GaussianBlur, UnsharpMask and the point-wise filters in PointFilter
+ * implement it, and Pipeline chains them (see then()).
+ *
+ * Filters work on packed 0xRRGGBB pixels held in Buffers: a Buffer is a rectangle of the image
+ * in image coordinates, so a filter can read a tile-sized scratch buffer and a full raster the
+ * same way. Pixels a filter cannot compute because their context would leave the image (the
+ * border band of a convolution) are still written, with that filter's border value.
+ */
+public interface Filter {
+
+    /** Side of the square tiles the default applySequential/filterParallel work through. */
+    int TILE_SIZE = 256;
+
+    /**
+     * Pixels of context each output pixel reads on every side; a window's input must cover the
+     * window grown by this much (clamped to the image). Zero for point-wise filters.
+     */
+    int getRadius();
+
+    /**
+     * Filters the output window [x0, x1) x [y0, y1) of an imageWidth x imageHeight image. src
+     * must cover the window grown by getRadius() and clamped to the image; dst must cover the
+     * window. Every pixel of the window is written.
+     */
+    void filter(Buffer src, Buffer dst, int x0, int y0, int x1, int y1, int imageWidth, int imageHeight);
+
+    /**
+     * Every parameter that affects the output as a stable string. ResultCache keys on it, so two
+     * filters with equal parameters must produce identical images.
+     */
+    String getParameters();
+
+    /**
+     * A filter that runs this one and then next in a single pass, or null when this filter
+     * cannot absorb it. Pipeline uses this to fold point-wise steps into the convolution before
+     * them, so their pixels are transformed while still in registers.
+     */
+    default Filter fuse(PointFilter next) {
+        return null;
+    }
+
+    /** Reports to the given metrics (convolution latency, tile counts); null turns it off. */
+    default void setMetrics(Metrics metrics) {
+    }
+
+    /**
+     * Leases scratch planes and tile buffers from the given pool instead of allocating them per
+     * call; null (the default) allocates.
+     */
+    default void setBufferPool(BufferPool buffers) {
+    }
+
+    /** This filter followed by next, executed tile by tile; see Pipeline. */
+    default Filter then(Filter next) {
+        return new Pipeline(this, next);
+    }
+
+    /** Filters the window on the pool, split into tiles of at most TILE_SIZE x TILE_SIZE. */
+    default void filterParallel(Buffer src, Buffer dst, int x0, int y0, int x1, int y1,
+                                int imageWidth, int imageHeight, ForkJoinPool pool) {
+        if (x0 < x1 && y0 < y1) {
+            pool.invoke(new FilterTask(this, src, dst, x0, y0, x1, y1, imageWidth, imageHeight));
+        }
+    }
+
+    default BufferedImage applySequential(BufferedImage input) {
+        return applySequential(input, new BufferedImage(input.getWidth(), input.getHeight(), BufferedImage.TYPE_INT_RGB));
+    }
+
+    /**
+     * Filters input into output, a TYPE_INT_RGB image of the same size (for example one leased
+     * from a BufferPool), and returns output.
+     */
+    default BufferedImage applySequential(BufferedImage input, BufferedImage output) {
+        int width = input.getWidth();
+        int height = input.getHeight();
+        Buffer src = Buffer.of(input);
+        Buffer dst = Buffer.of(output);
+        for (int y = 0; y < height; y += TILE_SIZE) {
+            for (int x = 0; x < width; x += TILE_SIZE) {
+                filter(src, dst, x, y, Math.min(width, x + TILE_SIZE), Math.min(height, y + TILE_SIZE),
+                        width, height);
+            }
+        }
+        return output;
+    }
+
+    default BufferedImage applyParallel(BufferedImage input, ForkJoinPool pool) {
+        return applyParallel(input, new BufferedImage(input.getWidth(), input.getHeight(), BufferedImage.TYPE_INT_RGB),
+                pool);
+    }
+
+    /** applyParallel into a caller-supplied output; see applySequential(input, output). */
+    default BufferedImage applyParallel(BufferedImage input, BufferedImage output, ForkJoinPool pool) {
+        int width = input.getWidth();
+        int height = input.getHeight();
+        filterParallel(Buffer.of(input), Buffer.of(output), 0, 0, width, height, width, height, pool);
+        return output;
+    }
+
+    /**
+     * A width x height rectangle of an image whose top-left pixel is image pixel (x, y); pixel
+     * (px, py) of the image is pixels[(py - y) * width + (px - x)]. The array holds exactly this
+     * rectangle.
+     */
+    final class Buffer {
+        public final int[] pixels;
+        public final int x;
+        public final int y;
+        public final int width;
+        public final int height;
+
+        public Buffer(int[] pixels, int x, int y, int width, int height) {
+            if (pixels.length != width * height) {
+                throw new IllegalArgumentException("Buffer of " + pixels.length + " pixels is not "
+                        + width + "x" + height);
+            }
+            this.pixels = pixels;
+            this.x = x;
+            this.y = y;
+            this.width = width;
+            this.height = height;
+        }
+
+        /** A zeroed buffer for the rectangle [x0, x1) x [y0, y1). */
+        public static Buffer allocate(int x0, int y0, int x1, int y1) {
+            return new Buffer(new int[(x1 - x0) * (y1 - y0)], x0, y0, x1 - x0, y1 - y0);
+        }
+
+        /**
+         * allocate from the given pool, or freshly when it is null; pooled contents are undefined,
+         * which is fine for scratch that a filter fills whole. Hand it back with recycle().
+         */
+        static Buffer allocate(BufferPool pool, int x0, int y0, int x1, int y1) {
+            return pool == null
+                    ? allocate(x0, y0, x1, y1)
+                    : new Buffer(pool.leaseInts((x1 - x0) * (y1 - y0)), x0, y0, x1 - x0, y1 - y0);
+        }
+
+        // Returns the pixels to pool; a no-op when it is null
+        void recycle(BufferPool pool) {
+            if (pool != null) {
+                pool.release(pixels);
+            }
+        }
+
+        /** The whole image; see MainApp.GaussianBlur.rgbPixels for when that copies. */
+        public static Buffer of(BufferedImage image) {
+            return new Buffer(MainApp.GaussianBlur.rgbPixels(image), 0, 0, image.getWidth(), image.getHeight());
+        }
+
+        /**
+         * Sets the pixels of [x0, x1) x [y0, y1) that lie outside the inner rectangle
+         * [ix0, ix1) x [iy0, iy1) to value; an empty inner rectangle fills the whole window.
+         */
+        void fillOutside(int x0, int y0, int x1, int y1, int ix0, int iy0, int ix1, int iy1, int value) {
+            if (ix0 >= ix1 || iy0 >= iy1) {
+                ix0 = ix1 = x1;
+                iy0 = iy1 = y1;
+            }
+            for (int py = y0; py < y1; py++) {
+                int row = (py - y) * width - x;
+                if (py < iy0 || py >= iy1) {
+                    Arrays.fill(pixels, row + x0, row + x1, value);
+                } else {
+                    Arrays.fill(pixels, row + x0, row + Math.max(x0, ix0), value);
+                    Arrays.fill(pixels, row + Math.min(x1, ix1), row + x1, value);
+                }
+            }
+        }
+    }
+
+    /** Splits a window into quadrants until each tile fits TILE_SIZE x TILE_SIZE. */
+    final class FilterTask extends RecursiveAction {
+        private final Filter filter;
+        private final Buffer src;
+        private final Buffer dst;
+        private final int x0, y0, x1, y1;
+        private final int imageWidth, imageHeight;
+
+        FilterTask(Filter filter, Buffer src, Buffer dst, int x0, int y0, int x1, int y1,
+                   int imageWidth, int imageHeight) {
+            this.filter = filter;
+            this.src = src;
+            this.dst = dst;
+            this.x0 = x0;
+            this.y0 = y0;
+            this.x1 = x1;
+            this.y1 = y1;
+            this.imageWidth = imageWidth;
+            this.imageHeight = imageHeight;
+        }
+
+        @Override
+        protected void compute() {
+            int width = x1 - x0;
+            int height = y1 - y0;
+            if (width <= TILE_SIZE && height <= TILE_SIZE) {
+                filter.filter(src, dst, x0, y0, x1, y1, imageWidth, imageHeight);
+            } else if (width > TILE_SIZE && height > TILE_SIZE) {
+                int midX = x0 + width / 2;
+                int midY = y0 + height / 2;
+                invokeAll(
+                        new FilterTask(filter, src, dst, x0, y0, midX, midY, imageWidth, imageHeight),
+                        new FilterTask(filter, src, dst, midX, y0, x1, midY, imageWidth, imageHeight),
+                        new FilterTask(filter, src, dst, x0, midY, midX, y1, imageWidth, imageHeight),
+                        new FilterTask(filter, src, dst, midX, midY, x1, y1, imageWidth, imageHeight));
+            } else if (width > TILE_SIZE) {
+                int midX = x0 + width / 2;
+                invokeAll(
+                        new FilterTask(filter, src, dst, x0, y0, midX, y1, imageWidth, imageHeight),
+                        new FilterTask(filter, src, dst, midX, y0, x1, y1, imageWidth, imageHeight));
+            } else {
+                int midY = y0 + height / 2;
+                invokeAll(
+                        new FilterTask(filter, src, dst, x0, y0, x1, midY, imageWidth, imageHeight),
+                        new FilterTask(filter, src, dst, x0, midY, x1, y1, imageWidth, imageHeight));
+            }
+        }
+    }
+}
@@ -0,0 +1,243 @@
+package final_project;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.stream.Stream;
+
+/**
+ * Long-running watch-folder mode: every .jpg/.jpeg/.png/.bmp file that appears in (or changes
+ * in) the input directory is blurred on the Processor's pool and written to the output
+ * directory as soon as it has stopped changing.
+ *
+ * A file counts as complete once its size and modification time have not changed for
+ * quietMillis, which debounces uploads and copies that are still in progress. Finished inputs
+ * are appended to a checkpoint file in the output directory together with the size and
+ * modification time they had, so a restart only processes files that are new or have changed
+ * since. On startup the checkpoint is rewritten with one line per input that still exists, so it
+ * does not keep growing across restarts. Jobs that finish after close() are not recorded and are
+ * simply processed again by the next run.
+ */
+public class FolderWatcher implements Closeable {
+
+    static final String CHECKPOINT_FILE = ".blur-checkpoint";
+
+    private final Path inputDirectory;
+    private final Path outputDirectory;
+    private final MainApp.Processor processor;
+    private final long quietMillis;
+    private final WatchService watchService;
+    private final ScheduledExecutorService settler = Executors.newSingleThreadScheduledExecutor();
+    private final Map<Path, Observation> pending = new ConcurrentHashMap<>();
+    private final Set<Path> inFlight = ConcurrentHashMap.newKeySet();
+    private final Map<String, String> checkpoint = new ConcurrentHashMap<>();
+    // Inputs that failed, by signature, so a broken file is retried only once it changes
+    private final Map<String, String> failed = new ConcurrentHashMap<>();
+    private final BufferedWriter checkpointWriter;
+    private volatile boolean closed;
+
+    public FolderWatcher(Path inputDirectory, Path outputDirectory, MainApp.Processor processor, long quietMillis)
+            throws IOException {
+        this.inputDirectory = inputDirectory.toAbsolutePath().normalize();
+        this.outputDirectory = outputDirectory.toAbsolutePath().normalize();
+        if (this.inputDirectory.equals(this.outputDirectory)) {
+            throw new IllegalArgumentException("Output directory must differ from the watched directory");
+        }
+        this.processor = processor;
+        this.quietMillis = quietMillis;
+        Files.createDirectories(this.outputDirectory);
+
+        Path checkpointPath = this.outputDirectory.resolve(CHECKPOINT_FILE);
+        if (Files.exists(checkpointPath)) {
+            for (String line : Files.readAllLines(checkpointPath, StandardCharsets.UTF_8)) {
+                int tab = line.lastIndexOf('\t');
+                if (tab > 0) {
+                    checkpoint.put(line.substring(0, tab), line.substring(tab + 1));
+                }
+            }
+            compactCheckpoint(checkpointPath);
+        }
+        this.checkpointWriter = Files.newBufferedWriter(checkpointPath, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        this.watchService = FileSystems.getDefault().newWatchService();
+    }
+
+    /**
+     * Processes whatever is already in the input directory and not in the checkpoint, then
+     * blocks handling new arrivals until close() is called.
+     */
+    public void run() throws IOException, InterruptedException {
+        inputDirectory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.OVERFLOW);
+        settler.scheduleWithFixedDelay(this::settle, quietMillis / 2, Math.max(1, quietMillis / 2),
+                TimeUnit.MILLISECONDS);
+        scanDirectory();
+
+        while (!closed) {
+            WatchKey key;
+            try {
+                key = watchService.take();
+            } catch (ClosedWatchServiceException e) {
+                break;
+            }
+            for (WatchEvent<?> event : key.pollEvents()) {
+                if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                    // Events were dropped; fall back to a full listing
+                    scanDirectory();
+                } else {
+                    observe(inputDirectory.resolve((Path) event.context()));
+                }
+            }
+            if (!key.reset()) {
+                System.err.println("Watch directory is no longer accessible: " + inputDirectory);
+                break;
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        settler.shutdownNow();
+        watchService.close();
+        synchronized (checkpointWriter) {
+            checkpointWriter.close();
+        }
+    }
+
+    // Later lines for the same input replaced earlier ones when loading; keep only the survivors
+    private void compactCheckpoint(Path checkpointPath) throws IOException {
+        checkpoint.keySet().removeIf(file -> !Files.exists(Path.of(file)));
+        Path temp = Files.createTempFile(outputDirectory, CHECKPOINT_FILE, ".part");
+        try {
+            try (BufferedWriter writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+                for (Map.Entry<String, String> entry : checkpoint.entrySet()) {
+                    writer.write(entry.getKey() + "\t" + entry.getValue());
+                    writer.newLine();
+                }
+            }
+            Files.move(temp, checkpointPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    static boolean isImage(Path file) {
+        String name = file.getFileName().toString().toLowerCase(Locale.ROOT);
+        return name.endsWith(".jpg") || name.endsWith(".jpeg") || name.endsWith(".png") || name.endsWith(".bmp");
+    }
+
+    private void scanDirectory() throws IOException {
+        try (Stream<Path> files = Files.list(inputDirectory)) {
+            files.forEach(this::observe);
+        }
+    }
+
+    // Starts (or restarts) the quiet period for a file unless it is already done
+    private void observe(Path file) {
+        if (!isImage(file) || inFlight.contains(file)) {
+            return;
+        }
+        Observation current = Observation.of(file);
+        if (current == null
+                || current.signature().equals(checkpoint.get(file.toString()))
+                || current.signature().equals(failed.get(file.toString()))) {
+            return;
+        }
+        pending.put(file, current);
+    }
+
+    private void settle() {
+        long now = System.currentTimeMillis();
+        for (Map.Entry<Path, Observation> entry : pending.entrySet()) {
+            Path file = entry.getKey();
+            Observation previous = entry.getValue();
+            // An exception escaping a scheduled run would cancel every later one
+            try {
+                Observation current = Observation.of(file);
+                if (current == null) {
+                    pending.remove(file);
+                } else if (!current.signature().equals(previous.signature())) {
+                    pending.put(file, current);
+                } else if (now - previous.seenAtMillis >= quietMillis && inFlight.add(file)) {
+                    pending.remove(file);
+                    try {
+                        submit(file, current);
+                    } catch (RuntimeException e) {
+                        inFlight.remove(file);
+                        failed.put(file.toString(), current.signature());
+                        throw e;
+                    }
+                }
+            } catch (RuntimeException e) {
+                pending.remove(file);
+                System.err.println("Skipping " + file + ": " + e);
+            }
+        }
+    }
+
+    private void submit(Path file, Observation observation) {
+        processor.submitToFile(file.toString(), outputDirectory.toString())
+                .whenComplete((output, error) -> {
+                    inFlight.remove(file);
+                    if (error == null) {
+                        recordDone(file, observation);
+                    } else {
+                        failed.put(file.toString(), observation.signature());
+                    }
+                    // A file that changed again while it was being processed gets another pass
+                    observe(file);
+                });
+    }
+
+    private void recordDone(Path file, Observation observation) {
+        checkpoint.put(file.toString(), observation.signature());
+        synchronized (checkpointWriter) {
+            if (closed) {
+                return;
+            }
+            try {
+                checkpointWriter.write(file + "\t" + observation.signature());
+                checkpointWriter.newLine();
+                checkpointWriter.flush();
+            } catch (IOException e) {
+                System.err.println("Could not update checkpoint: " + e.getMessage());
+            }
+        }
+    }
+
+    private static final class Observation {
+        final long size;
+        final long modifiedMillis;
+        final long seenAtMillis;
+
+        Observation(long size, long modifiedMillis, long seenAtMillis) {
+            this.size = size;
+            this.modifiedMillis = modifiedMillis;
+            this.seenAtMillis = seenAtMillis;
+        }
+
+        // Null when the file vanished or is not a regular file
+        static Observation of(Path file) {
+            try {
+                BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+                if (!attributes.isRegularFile()) {
+                    return null;
+                }
+                return new Observation(attributes.size(), attributes.lastModifiedTime().toMillis(),
+                        System.currentTimeMillis());
+            } catch (IOException e) {
+                return null;
+            }
+        }
+
+        String signature() {
+            return size + ":" + modifiedMillis;
+        }
+    }
+}
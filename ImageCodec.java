@@ -0,0 +1,391 @@
+package final_project;
+
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.FileImageInputStream;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageInputStreamImpl;
+import javax.imageio.stream.ImageOutputStreamImpl;
+
+/**
+ * Image file decoding and encoding with as little fixed cost per image as possible.
+ * ImageIO.read and ImageIO.write look up a service provider, create a reader or writer and a
+ * stream, and dispose of them on every call. Here, each thread keeps one reader and one writer
+ * per format and resets them between images, and the format is recognised from the file's first
+ * bytes rather than by asking every installed provider. A file is read into one heap buffer with
+ * a FileChannel and decoded straight from that buffer. Files are deliberately not memory-mapped:
+ * a live mapping keeps the file from being deleted or replaced on Windows until the garbage
+ * collector unmaps it, and a mapped file truncated meanwhile faults with an InternalError that
+ * can be raised after the read that caused it has returned.
+ *
+ * Decoding can subsample the source (only every n-th pixel is decoded, for thumbnails and
+ * previews) and deliver the pixels into a destination image the caller supplies, typically a
+ * TYPE_INT_RGB image leased from a BufferPool, so the filters need no conversion copy of their
+ * own. The decoder writes straight into it when it is the decoder's native layout.
+ */
+public final class ImageCodec {
+
+    /** Supplies the image to decode into once the decoded size is known, e.g. BufferPool::leaseImage. */
+    public interface Destination {
+        BufferedImage create(int width, int height);
+    }
+
+    /** Fresh TYPE_INT_RGB images, the layout the filters work on. */
+    public static final Destination INT_RGB = (width, height) -> new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+
+    // Files up to this size are read into a heap buffer, larger ones through a FileImageInputStream
+    private static final long MAX_READ_BYTES = 64L << 20;
+
+    private static final ThreadLocal<Map<String, ImageReader>> READERS = ThreadLocal.withInitial(HashMap::new);
+    private static final ThreadLocal<Map<String, ImageWriter>> WRITERS = ThreadLocal.withInitial(HashMap::new);
+    private static final Map<String, Boolean> WRITABLE = new ConcurrentHashMap<>();
+
+    private ImageCodec() {
+    }
+
+    /** Decodes path at full resolution into a fresh TYPE_INT_RGB image. */
+    public static BufferedImage read(Path path) throws IOException {
+        return read(path, 0, INT_RGB);
+    }
+
+    /**
+     * Decodes path. With minSize > 0, only every n-th pixel of every n-th row is decoded, for
+     * the largest n that keeps the longer side at least minSize; ask for about twice the final
+     * size when scaling down afterwards. With 0, the full resolution is decoded. The pixels are
+     * written into destination.create(width, height), or into whatever image the decoder
+     * prefers when destination is null. Transparent pixels end up over black, as with
+     * GaussianBlur.rgbPixels.
+     */
+    public static BufferedImage read(Path path, int minSize, Destination destination) throws IOException {
+        try (ImageInputStream in = open(path)) {
+            return withReader(in, path.toString(), reader -> decode(reader, minSize, destination));
+        }
+    }
+
+    /** Decodes an encoded image held in memory, e.g. a request body, as read(Path, ...) does a file. */
+    public static BufferedImage read(byte[] encoded, int minSize, Destination destination) throws IOException {
+        try (ImageInputStream in = new BufferImageInputStream(ByteBuffer.wrap(encoded))) {
+            return withReader(in, "image data", reader -> decode(reader, minSize, destination));
+        }
+    }
+
+    /**
+     * Width and height of an encoded image, read from its header without decoding any pixels,
+     * so callers can refuse or budget for an image before committing the memory it decodes into.
+     */
+    public static Dimension size(byte[] encoded) throws IOException {
+        try (ImageInputStream in = new BufferImageInputStream(ByteBuffer.wrap(encoded))) {
+            return withReader(in, "image data", reader -> new Dimension(reader.getWidth(0), reader.getHeight(0)));
+        }
+    }
+
+    private interface ReaderCall<T> {
+        T apply(ImageReader reader) throws IOException;
+    }
+
+    // Runs call with this thread's cached reader for the stream's format, reset afterwards
+    private static <T> T withReader(ImageInputStream in, String source, ReaderCall<T> call) throws IOException {
+        String format = sniff(in);
+        Map<String, ImageReader> readers = READERS.get();
+        ImageReader reader = format == null ? null : readers.get(format);
+        if (reader == null) {
+            Iterator<ImageReader> found = format != null
+                    ? ImageIO.getImageReadersByFormatName(format)
+                    : ImageIO.getImageReaders(in);
+            if (!found.hasNext()) {
+                throw new IOException("Unsupported image format: " + source);
+            }
+            reader = found.next();
+            if (format != null) {
+                readers.put(format, reader);
+            }
+        }
+        boolean reuse = false;
+        try {
+            reader.setInput(in, true, true);
+            T result = call.apply(reader);
+            reuse = format != null;
+            return result;
+        } finally {
+            if (reuse) {
+                reader.reset();
+            } else {
+                // Unknown formats are not cached, and a reader that failed is not trusted again
+                reader.dispose();
+                if (format != null) {
+                    readers.remove(format, reader);
+                }
+            }
+        }
+    }
+
+    private static BufferedImage decode(ImageReader reader, int minSize, Destination destination) throws IOException {
+        int width = reader.getWidth(0);
+        int height = reader.getHeight(0);
+        int step = minSize > 0 ? Math.max(1, Math.max(width, height) / minSize) : 1;
+        ImageReadParam param = reader.getDefaultReadParam();
+        if (step > 1) {
+            param.setSourceSubsampling(step, step, 0, 0);
+        }
+        if (destination == null) {
+            return reader.read(0, param);
+        }
+
+        BufferedImage target = destination.create((width + step - 1) / step, (height + step - 1) / step);
+        if (decodesInto(reader, target.getType())) {
+            param.setDestination(target);
+            return reader.read(0, param);
+        }
+        BufferedImage decoded = reader.read(0, param);
+        Graphics2D g2d = target.createGraphics();
+        if (decoded.getColorModel().hasAlpha()) {
+            g2d.setColor(Color.BLACK);
+            g2d.fillRect(0, 0, target.getWidth(), target.getHeight());
+        }
+        g2d.drawImage(decoded, 0, 0, null);
+        g2d.dispose();
+        return target;
+    }
+
+    /**
+     * Whether a destination of this type is the decoder's own preferred layout. Decoders also
+     * accept some other types (the PNG reader takes TYPE_INT_RGB), but convert into them pixel
+     * by pixel, which measured up to twice as slow as decoding natively and converting with one
+     * drawImage blit.
+     */
+    private static boolean decodesInto(ImageReader reader, int type) throws IOException {
+        Iterator<ImageTypeSpecifier> types = reader.getImageTypes(0);
+        return type != BufferedImage.TYPE_CUSTOM && types.hasNext() && types.next().getBufferedImageType() == type;
+    }
+
+    /** Whether an ImageIO writer exists for the format name (jpg, png, ...); cached per name. */
+    public static boolean canWrite(String format) {
+        return WRITABLE.computeIfAbsent(format.toLowerCase(Locale.ROOT),
+                name -> ImageIO.getImageWritersByFormatName(name).hasNext());
+    }
+
+    /**
+     * Encodes image into file, replacing its contents, with the format's default settings.
+     * Returns false when no writer exists for the format, like ImageIO.write.
+     */
+    public static boolean write(BufferedImage image, String format, File file) throws IOException {
+        String name = format.toLowerCase(Locale.ROOT);
+        Map<String, ImageWriter> writers = WRITERS.get();
+        ImageWriter writer = writers.get(name);
+        if (writer == null) {
+            Iterator<ImageWriter> found = ImageIO.getImageWritersByFormatName(name);
+            if (!found.hasNext()) {
+                return false;
+            }
+            writer = found.next();
+            writers.put(name, writer);
+        }
+        boolean reuse = false;
+        try (EncodedImageOutputStream out = new EncodedImageOutputStream()) {
+            writer.setOutput(out);
+            writer.write(null, new IIOImage(image, null, null), null);
+            out.writeTo(file.toPath());
+            reuse = true;
+        } finally {
+            if (reuse) {
+                writer.reset();
+            } else {
+                writer.dispose();
+                writers.remove(name, writer);
+            }
+        }
+        return true;
+    }
+
+    private static ImageInputStream open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size <= MAX_READ_BYTES) {
+                ByteBuffer buffer = ByteBuffer.allocate((int) size);
+                while (buffer.hasRemaining()) {
+                    if (channel.read(buffer) < 0) {
+                        // The file shrank meanwhile and just ends early
+                        break;
+                    }
+                }
+                buffer.flip();
+                return new BufferImageInputStream(buffer);
+            }
+        }
+        return new FileImageInputStream(path.toFile());
+    }
+
+    // ImageIO format name from the file signature, or null to let ImageIO probe every provider
+    private static String sniff(ImageInputStream in) throws IOException {
+        byte[] head = new byte[4];
+        in.mark();
+        int n = in.read(head, 0, head.length);
+        in.reset();
+        if (n < head.length) {
+            return null;
+        }
+        int b0 = head[0] & 0xFF, b1 = head[1] & 0xFF, b2 = head[2] & 0xFF, b3 = head[3] & 0xFF;
+        if (b0 == 0xFF && b1 == 0xD8 && b2 == 0xFF) {
+            return "jpeg";
+        }
+        if (b0 == 0x89 && b1 == 'P' && b2 == 'N' && b3 == 'G') {
+            return "png";
+        }
+        if (b0 == 'G' && b1 == 'I' && b2 == 'F' && b3 == '8') {
+            return "gif";
+        }
+        if (b0 == 'B' && b1 == 'M') {
+            return "bmp";
+        }
+        if ((b0 == 'I' && b1 == 'I' && b2 == 42 && b3 == 0) || (b0 == 'M' && b1 == 'M' && b2 == 0 && b3 == 42)) {
+            return "tiff";
+        }
+        return null;
+    }
+
+    /**
+     * Collects an encoder's output in memory (encoders write many small pieces and seek back to
+     * patch lengths) and writes it to the file with one FileChannel write.
+     */
+    private static final class EncodedImageOutputStream extends ImageOutputStreamImpl {
+        private byte[] bytes = new byte[64 * 1024];
+        private int length;
+
+        @Override
+        public void write(int b) throws IOException {
+            checkClosed();
+            flushBits();
+            ensureCapacity(streamPos + 1);
+            bytes[(int) streamPos++] = (byte) b;
+            length = Math.max(length, (int) streamPos);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            checkClosed();
+            if (off < 0 || len < 0 || off + len > b.length) {
+                throw new IndexOutOfBoundsException();
+            }
+            flushBits();
+            ensureCapacity(streamPos + len);
+            System.arraycopy(b, off, bytes, (int) streamPos, len);
+            streamPos += len;
+            length = Math.max(length, (int) streamPos);
+        }
+
+        @Override
+        public int read() throws IOException {
+            checkClosed();
+            bitOffset = 0;
+            return streamPos < length ? bytes[(int) streamPos++] & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            checkClosed();
+            if (off < 0 || len < 0 || off + len > b.length) {
+                throw new IndexOutOfBoundsException();
+            }
+            bitOffset = 0;
+            if (len == 0) {
+                return 0;
+            }
+            int count = (int) Math.min(len, length - streamPos);
+            if (count <= 0) {
+                return -1;
+            }
+            System.arraycopy(bytes, (int) streamPos, b, off, count);
+            streamPos += count;
+            return count;
+        }
+
+        @Override
+        public long length() {
+            return length;
+        }
+
+        // Replaces the file like ImageIO.write does; truncating it in place measured slower
+        void writeTo(Path path) throws IOException {
+            Files.deleteIfExists(path);
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+                ByteBuffer buffer = ByteBuffer.wrap(bytes, 0, length);
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+            }
+        }
+
+        private void ensureCapacity(long needed) throws IOException {
+            if (needed > Integer.MAX_VALUE - 8) {
+                throw new IOException("Encoded image exceeds 2 GB");
+            }
+            if (needed > bytes.length) {
+                bytes = Arrays.copyOf(bytes, (int) Math.min(Integer.MAX_VALUE - 8, Math.max(needed, 2L * bytes.length)));
+            }
+        }
+    }
+
+    /** An ImageInputStream over encoded bytes in a heap buffer; reads are plain copies out of it. */
+    private static final class BufferImageInputStream extends ImageInputStreamImpl {
+        private final ByteBuffer buffer;
+
+        BufferImageInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() throws IOException {
+            checkClosed();
+            bitOffset = 0;
+            if (streamPos >= buffer.limit()) {
+                return -1;
+            }
+            return buffer.get((int) streamPos++) & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            checkClosed();
+            if (off < 0 || len < 0 || off + len > b.length) {
+                throw new IndexOutOfBoundsException();
+            }
+            bitOffset = 0;
+            if (len == 0) {
+                return 0;
+            }
+            int count = (int) Math.min(len, buffer.limit() - streamPos);
+            if (count <= 0) {
+                return -1;
+            }
+            buffer.get((int) streamPos, b, off, count);
+            streamPos += count;
+            return count;
+        }
+
+        @Override
+        public long length() {
+            return buffer.limit();
+        }
+    }
+}
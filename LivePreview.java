@@ -0,0 +1,208 @@
+package final_project;
+
+import java.awt.image.BufferedImage;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.swing.SwingUtilities;
+
+/**
+ * Progressive blur preview for the UI. Each render first blurs a display-sized proxy of the image
+ * (sigma scaled to the proxy's resolution), which takes milliseconds even for 20+ megapixel
+ * photos, and then refines the view band by band from the full-resolution blur. Full-resolution
+ * output is never held whole: each band is blurred into a small buffer and immediately
+ * area-averaged down to its display rows, the same way the proxy was made, so refined bands line
+ * up with the proxy exactly.
+ *
+ * Every new request makes the previous one stale: stale renders stop at the next band boundary
+ * and their pending updates are dropped. All Listener calls happen on the event dispatch thread,
+ * and a view image is only modified there once it has been handed out.
+ */
+public class LivePreview implements Closeable {
+
+    /** Receives preview images on the event dispatch thread. */
+    public interface Listener {
+        void originalReady(BufferedImage view);
+
+        /** view is the same image for all updates of one render until complete is true. */
+        void blurredUpdated(BufferedImage view, boolean complete, String status);
+
+        void failed(String message);
+    }
+
+    // Source pixels blurred per refinement band; small enough to keep the view responsive
+    private static final long BAND_PIXELS = 1_000_000L;
+
+    private final int displaySize;
+    private final Listener listener;
+    private final ForkJoinPool pool;
+    private final ExecutorService worker = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "live-preview");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final AtomicLong generation = new AtomicLong();
+
+    // Owned by the worker thread
+    private String loadedPath;
+    private Filter.Buffer source;
+    private BufferedImage proxy;
+
+    public LivePreview(int displaySize, int threadCount, Listener listener) {
+        this.displaySize = displaySize;
+        this.listener = listener;
+        this.pool = MainApp.Processor.newComputePool(threadCount);
+    }
+
+    /**
+     * Shows the given image blurred with sigma. The image is decoded only when it differs from
+     * the one already loaded.
+     */
+    public void render(String path, float sigma) {
+        long id = generation.incrementAndGet();
+        worker.execute(() -> {
+            if (id != generation.get()) {
+                return;
+            }
+            try {
+                if (!path.equals(loadedPath)) {
+                    load(path);
+                    // Never modified after load, so the EDT can share it
+                    BufferedImage original = proxy;
+                    SwingUtilities.invokeLater(() -> listener.originalReady(original));
+                }
+                refine(id, sigma);
+            } catch (IOException | RuntimeException e) {
+                SwingUtilities.invokeLater(() -> listener.failed(path + ": " + e.getMessage()));
+            }
+        });
+    }
+
+    /** Makes any running render stale without starting a new one. */
+    public void cancel() {
+        generation.incrementAndGet();
+    }
+
+    @Override
+    public void close() {
+        cancel();
+        worker.shutdownNow();
+        pool.shutdown();
+    }
+
+    private void load(String path) throws IOException {
+        loadedPath = null;
+        source = null;
+        proxy = null;
+        BufferedImage image = ImageCodec.read(Path.of(path));
+        source = Filter.Buffer.of(image);
+        double scale = Math.min(1.0, (double) displaySize / Math.max(image.getWidth(), image.getHeight()));
+        int viewWidth = Math.max(1, (int) Math.round(image.getWidth() * scale));
+        int viewHeight = Math.max(1, (int) Math.round(image.getHeight() * scale));
+        proxy = new BufferedImage(viewWidth, viewHeight, BufferedImage.TYPE_INT_RGB);
+        downscale(source.pixels, source.width, source.height, 0, MainApp.GaussianBlur.rgbPixels(proxy),
+                viewWidth, viewHeight, 0, viewHeight);
+        loadedPath = path;
+    }
+
+    private void refine(long id, float sigma) {
+        long start = System.nanoTime();
+        int width = source.width;
+        int height = source.height;
+        int viewWidth = proxy.getWidth();
+        int viewHeight = proxy.getHeight();
+
+        // Proxy pass: the same blur at the proxy's resolution
+        float proxySigma = sigma * viewWidth / width;
+        BufferedImage view = blurFor(proxySigma).applyParallel(proxy, pool);
+        boolean exact = viewWidth == width && viewHeight == height;
+        String proxyStatus = String.format("Preview sigma %.1f: proxy in %.0f ms", sigma, (System.nanoTime() - start) / 1e6);
+        if (!publish(id, () -> listener.blurredUpdated(view, exact, proxyStatus)) || exact) {
+            return;
+        }
+
+        // Refinement: bands of whole view rows, so each band maps onto its own rows of the view
+        MainApp.GaussianBlur blur = blurFor(sigma);
+        int viewRowsPerBand = (int) Math.max(1, BAND_PIXELS * viewHeight / ((long) width * height));
+        for (int viewTop = 0; viewTop < viewHeight; viewTop += viewRowsPerBand) {
+            if (id != generation.get()) {
+                return;
+            }
+            int viewBottom = Math.min(viewHeight, viewTop + viewRowsPerBand);
+            int top = (int) ((long) viewTop * height / viewHeight);
+            int bottom = (int) ((long) viewBottom * height / viewHeight);
+            Filter.Buffer band = Filter.Buffer.allocate(0, top, width, bottom);
+            blur.filterParallel(source, band, 0, top, width, bottom, width, height, pool);
+
+            int[] rows = new int[viewWidth * (viewBottom - viewTop)];
+            downscale(band.pixels, width, height, top, rows, viewWidth, viewHeight, viewTop, viewBottom);
+            boolean complete = viewBottom == viewHeight;
+            String status = complete
+                    ? String.format("Preview sigma %.1f: full resolution in %.0f ms", sigma, (System.nanoTime() - start) / 1e6)
+                    : proxyStatus;
+            int rowsTop = viewTop;
+            int rowsBottom = viewBottom;
+            publish(id, () -> {
+                view.getRaster().setDataElements(0, rowsTop, viewWidth, rowsBottom - rowsTop, rows);
+                listener.blurredUpdated(view, complete, status);
+            });
+        }
+    }
+
+    // Runs the update on the EDT unless a newer request has arrived by then
+    private boolean publish(long id, Runnable update) {
+        if (id != generation.get()) {
+            return false;
+        }
+        SwingUtilities.invokeLater(() -> {
+            if (id == generation.get()) {
+                update.run();
+            }
+        });
+        return true;
+    }
+
+    // The box engine is within one level of the exact kernel from sigma 4 up and much faster there
+    private static MainApp.GaussianBlur blurFor(float sigma) {
+        return new MainApp.GaussianBlur(sigma, sigma >= 4
+                ? MainApp.GaussianBlur.Engine.BOX
+                : MainApp.GaussianBlur.Engine.SEPARABLE);
+    }
+
+    /**
+     * Area-averages view rows [viewTop, viewBottom) of a width x height image down to a
+     * viewWidth x viewHeight view. src holds the image rows those view rows cover, starting at
+     * image row srcTop; dst receives the view rows.
+     */
+    static void downscale(int[] src, int width, int height, int srcTop, int[] dst,
+                          int viewWidth, int viewHeight, int viewTop, int viewBottom) {
+        int[] columnStart = new int[viewWidth + 1];
+        for (int vx = 0; vx <= viewWidth; vx++) {
+            columnStart[vx] = (int) ((long) vx * width / viewWidth);
+        }
+        for (int vy = viewTop; vy < viewBottom; vy++) {
+            int y0 = (int) ((long) vy * height / viewHeight);
+            int y1 = Math.max(y0 + 1, (int) ((long) (vy + 1) * height / viewHeight));
+            for (int vx = 0; vx < viewWidth; vx++) {
+                int x0 = columnStart[vx];
+                int x1 = Math.max(x0 + 1, columnStart[vx + 1]);
+                long r = 0, g = 0, b = 0;
+                for (int y = y0; y < y1; y++) {
+                    int row = (y - srcTop) * width;
+                    for (int x = x0; x < x1; x++) {
+                        int pixel = src[row + x];
+                        r += (pixel >> 16) & 0xFF;
+                        g += (pixel >> 8) & 0xFF;
+                        b += pixel & 0xFF;
+                    }
+                }
+                long count = (long) (y1 - y0) * (x1 - x0);
+                dst[(vy - viewTop) * viewWidth + vx] = (int) (r / count) << 16 | (int) (g / count) << 8 | (int) (b / count);
+            }
+        }
+    }
+}
@@ -0,0 +1,513 @@
+package final_project;
+
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.GradientPaint;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.geom.Ellipse2D;
+import java.awt.geom.RoundRectangle2D;
+import java.awt.image.BufferedImage;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.OperatingSystemMXBean;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.LongConsumer;
+import java.util.stream.Stream;
+
+/**
+ * Sustained-load benchmark for Processor: images of mixed sizes, aspect ratios and sigmas arrive
+ * at a fixed average rate, whether or not earlier ones have finished (an open loop, like real
+ * traffic), and every request's latency is measured from the moment it was due to arrive. A
+ * saturated configuration therefore shows up as exploding tail latency rather than as a slower
+ * but tidy batch, and queueing behind a slow image is counted instead of hidden.
+ *
+ * The corpus is generated once: smooth gradients, soft-edged shapes, fractal (1/f-like) texture
+ * and sensor grain, saved mostly as JPEG, so decode, blur and encode costs resemble photographs
+ * rather than the uniform noise of createTestImages. -dir points at a directory to keep the
+ * corpus in; when it already holds images (photos, say) they are replayed as they are.
+ *
+ * Each engine and thread configuration runs in -f fresh forked JVMs (-f 0 runs it once
+ * in-process), each with its own seed: a warmup period whose requests are not recorded, then the
+ * measured period, then up to -drain seconds for the requests still in flight. Reported per
+ * configuration: completed images per second and megapixels per second, p50/p99/p99.9/max
+ * latency over the requests of all forks, process CPU as a percentage of all cores, and the heap
+ * high-water mark (sum of the heap pools' peaks since the measured period began, an upper bound
+ * on the true simultaneous peak). Counts are summed over the forks, rates and CPU averaged.
+ *
+ * Usage: java final_project.LoadBenchmark [-engine SEPARABLE,BOX] [-threads 2,4] [-rate 4]
+ *        [-arrival poisson|uniform] [-duration 30] [-warmup 5] [-drain 60] [-sigma 1,2,4,8]
+ *        [-sizes 640x480,1920x1080,1080x1920] [-images 40] [-dir corpus] [-seed 42] [-f 1] [-csv]
+ */
+public class LoadBenchmark {
+
+    private static final String RESULT = "RESULT";
+    private static final String LATENCY = "LATENCY";
+    private static final String[] IMAGE_EXTENSIONS = {".jpg", ".jpeg", ".png", ".bmp"};
+
+    private final Map<String, String> options = new LinkedHashMap<>();
+
+    private LoadBenchmark(String[] args) {
+        options.put("engine", "SEPARABLE,BOX,FIXED");
+        options.put("threads", String.valueOf(Runtime.getRuntime().availableProcessors()));
+        options.put("rate", "4");
+        options.put("arrival", "poisson");
+        options.put("duration", "30");
+        options.put("warmup", "5");
+        options.put("drain", "60");
+        options.put("sigma", "1,2,4,8");
+        options.put("sizes", "640x480,1024x768,1280x720,1920x1080,1080x1920,3000x2000,4000x3000");
+        options.put("images", "40");
+        options.put("seed", "42");
+        options.put("f", "1");
+
+        for (int i = 0; i < args.length; i++) {
+            String key = args[i].substring(1);
+            if (key.equals("csv") || key.equals("child")) {
+                options.put(key, "true");
+            } else if (i + 1 < args.length) {
+                options.put(key, args[++i]);
+            } else {
+                throw new IllegalArgumentException("Missing value for " + args[i]);
+            }
+        }
+    }
+
+    private List<String> list(String key) {
+        return Arrays.asList(options.get(key).split(","));
+    }
+
+    private double number(String key) {
+        return Double.parseDouble(options.get(key));
+    }
+
+    public static void main(String[] args) throws Exception {
+        LoadBenchmark benchmark = new LoadBenchmark(args);
+        if (benchmark.options.containsKey("child")) {
+            Queue<Long> latencies = new ConcurrentLinkedQueue<>();
+            double[] result = benchmark.run(benchmark.options.get("engine"),
+                    Integer.parseInt(benchmark.options.get("threads")), latencies::add);
+            for (long nanos : latencies) {
+                System.out.println(LATENCY + " " + nanos);
+            }
+            System.out.println(RESULT + " " + joinNumbers(result));
+        } else {
+            benchmark.runAll();
+        }
+    }
+
+    private void runAll() throws IOException, InterruptedException {
+        boolean temporary = !options.containsKey("dir");
+        Path corpus = temporary ? Files.createTempDirectory("blur-load") : Path.of(options.get("dir"));
+        try {
+            if (corpusFiles(corpus).isEmpty()) {
+                System.err.println("Generating " + options.get("images") + " images in " + corpus);
+                generateCorpus(corpus);
+            }
+            options.put("dir", corpus.toString());
+
+            boolean csv = options.containsKey("csv");
+            if (csv) {
+                System.out.println("Engine,Threads,RatePerSec,Completed,Failed,Unfinished,ImagesPerSec,MPixPerSec,"
+                        + "P50Ms,P99Ms,P999Ms,MaxMs,CpuPercent,HeapPeakMB");
+            } else {
+                System.out.printf("%-10s %7s %6s %6s %6s %6s %8s %8s %9s %9s %9s %9s %6s %9s%n", "Engine", "Threads",
+                        "Rate/s", "Done", "Failed", "Unfin", "Img/s", "MPix/s", "p50 ms", "p99 ms", "p99.9 ms",
+                        "max ms", "CPU %", "Heap MB");
+            }
+            for (String engine : list("engine")) {
+                for (String threads : list("threads")) {
+                    Metrics.LatencyHistogram latency = new Metrics.LatencyHistogram();
+                    List<double[]> forks = new ArrayList<>();
+                    if (number("f") == 0) {
+                        // In-process run, useful for quick checks; JIT and heap state leak between configurations
+                        forks.add(run(engine, Integer.parseInt(threads), latency::record));
+                    } else {
+                        for (int fork = 0; fork < number("f"); fork++) {
+                            double[] result = runFork(engine, threads, fork, latency);
+                            if (result != null) {
+                                forks.add(result);
+                            }
+                        }
+                    }
+                    if (!forks.isEmpty()) {
+                        report(csv, engine, threads, forks, latency);
+                    }
+                }
+            }
+        } finally {
+            if (temporary) {
+                deleteTree(corpus);
+            }
+        }
+    }
+
+    /**
+     * Runs one configuration in a child JVM, adding its latencies to latency. Each fork gets its
+     * own seed, so the forks replay different arrival sequences.
+     */
+    private double[] runFork(String engine, String threads, int fork, Metrics.LatencyHistogram latency)
+            throws IOException, InterruptedException {
+        List<String> command = new ArrayList<>();
+        command.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+        command.addAll(ManagementFactory.getRuntimeMXBean().getInputArguments());
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(LoadBenchmark.class.getName());
+        command.add("-child");
+        for (Map.Entry<String, String> option : options.entrySet()) {
+            if (!option.getKey().equals("csv") && !option.getKey().equals("child")) {
+                command.add("-" + option.getKey());
+                command.add(option.getKey().equals("engine") ? engine
+                        : option.getKey().equals("threads") ? threads
+                        : option.getKey().equals("seed") ? String.valueOf(Long.parseLong(option.getValue()) + fork)
+                        : option.getValue());
+            }
+        }
+
+        Process process = new ProcessBuilder(command).redirectError(ProcessBuilder.Redirect.INHERIT).start();
+        double[] result = null;
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith(LATENCY)) {
+                    latency.record(Long.parseLong(line.substring(LATENCY.length()).trim()));
+                } else if (line.startsWith(RESULT)) {
+                    result = Arrays.stream(line.substring(RESULT.length()).trim().split(" "))
+                            .mapToDouble(Double::parseDouble).toArray();
+                }
+            }
+        }
+        if (process.waitFor() != 0 || result == null) {
+            System.err.println("Fork failed for engine " + engine + ", " + threads + " threads");
+            return null;
+        }
+        return result;
+    }
+
+    /**
+     * Runs one configuration, passing the latency of every measured request that completed to
+     * latencies, and returns {completed, failed, unfinished, images/s, megapixels/s, CPU %,
+     * heap peak MB}.
+     */
+    private double[] run(String engineName, int threads, LongConsumer latencies) throws IOException, InterruptedException {
+        MainApp.GaussianBlur.Engine engine = MainApp.GaussianBlur.Engine.valueOf(engineName);
+        List<Path> corpus = corpusFiles(Path.of(options.get("dir")));
+        if (corpus.isEmpty()) {
+            throw new IOException("No images in " + options.get("dir"));
+        }
+        List<MainApp.GaussianBlur> blurs = new ArrayList<>();
+        for (String sigma : list("sigma")) {
+            blurs.add(new MainApp.GaussianBlur(Float.parseFloat(sigma), engine));
+        }
+        long[] pixels = new long[corpus.size()];
+        for (int i = 0; i < pixels.length; i++) {
+            BufferedImage image = ImageCodec.read(corpus.get(i));
+            pixels[i] = (long) image.getWidth() * image.getHeight();
+        }
+
+        Random random = new Random(Long.parseLong(options.get("seed")));
+        double meanGapNanos = 1e9 / number("rate");
+        boolean poisson = options.get("arrival").equals("poisson");
+        long warmupNanos = (long) (number("warmup") * 1e9);
+        long endNanos = warmupNanos + (long) (number("duration") * 1e9);
+
+        Path outputRoot = Files.createTempDirectory("blur-load-out");
+        MainApp.Processor processor = new MainApp.Processor(blurs.get(0), threads);
+        for (MainApp.GaussianBlur blur : blurs) {
+            processor.register(blur);
+        }
+        AtomicLong completed = new AtomicLong();
+        AtomicLong failed = new AtomicLong();
+        AtomicLong completedPixels = new AtomicLong();
+        AtomicLong lastCompletion = new AtomicLong();
+        List<CompletableFuture<?>> measured = new ArrayList<>();
+
+        OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+        long cpuStart = 0;
+        long measureStart = 0;
+        long start = System.nanoTime();
+        double offset = 0;
+        try {
+            boolean measuring = false;
+            for (long sequence = 0; ; sequence++) {
+                offset += poisson ? -Math.log(1 - random.nextDouble()) * meanGapNanos : meanGapNanos;
+                if (offset >= endNanos) {
+                    break;
+                }
+                long due = start + (long) offset;
+                long wait;
+                while ((wait = due - System.nanoTime()) > 0) {
+                    LockSupport.parkNanos(wait);
+                }
+                if (!measuring && offset >= warmupNanos) {
+                    measuring = true;
+                    measureStart = due;
+                    cpuStart = processCpuNanos(os);
+                    resetHeapPeaks();
+                }
+
+                int index = random.nextInt(corpus.size());
+                Path outputDirectory = outputRoot.resolve("r" + sequence);
+                Files.createDirectories(outputDirectory);
+                boolean record = measuring;
+                CompletableFuture<String> result = processor.submitToFile(corpus.get(index).toString(),
+                        outputDirectory.toString(), blurs.get(random.nextInt(blurs.size())));
+                CompletableFuture<?> done = result.whenComplete((outputPath, error) -> {
+                    long now = System.nanoTime();
+                    if (record) {
+                        if (error == null) {
+                            latencies.accept(now - due);
+                            completed.incrementAndGet();
+                            completedPixels.addAndGet(pixels[index]);
+                            lastCompletion.accumulateAndGet(now, Math::max);
+                        } else {
+                            failed.incrementAndGet();
+                        }
+                    }
+                    deleteTree(outputDirectory);
+                });
+                if (record) {
+                    measured.add(done);
+                }
+            }
+
+            long drainDeadline = System.nanoTime() + (long) (number("drain") * 1e9);
+            for (CompletableFuture<?> future : measured) {
+                long remaining = drainDeadline - System.nanoTime();
+                if (remaining <= 0) {
+                    break;
+                }
+                try {
+                    future.get(remaining, TimeUnit.NANOSECONDS);
+                } catch (Exception e) {
+                    // Counted as failed or unfinished below
+                }
+            }
+        } finally {
+            processor.shutdown();
+        }
+        long cpuNanos = processCpuNanos(os) - cpuStart;
+        long heapPeak = heapPeakBytes();
+        deleteTree(outputRoot);
+
+        long done = completed.get();
+        long window = Math.max(1, (done > 0 ? lastCompletion.get() : System.nanoTime()) - measureStart);
+        long unfinished = measured.size() - done - failed.get();
+        return new double[]{
+                done,
+                failed.get(),
+                unfinished,
+                done / (window / 1e9),
+                completedPixels.get() / 1e6 / (window / 1e9),
+                cpuNanos < 0 ? Double.NaN : 100.0 * cpuNanos / window / os.getAvailableProcessors(),
+                heapPeak / 1e6
+        };
+    }
+
+    /**
+     * One row per configuration: request counts summed over the forks, throughput and CPU
+     * averaged, latency percentiles over all forks' requests together, and the largest heap peak.
+     */
+    private void report(boolean csv, String engine, String threads, List<double[]> forks,
+                        Metrics.LatencyHistogram latency) {
+        double[] r = new double[11];
+        for (double[] fork : forks) {
+            r[0] += fork[0];
+            r[1] += fork[1];
+            r[2] += fork[2];
+            r[3] += fork[3] / forks.size();
+            r[4] += fork[4] / forks.size();
+            r[9] += fork[5] / forks.size();
+            r[10] = Math.max(r[10], fork[6]);
+        }
+        r[5] = latency.getPercentile(50) / 1e6;
+        r[6] = latency.getPercentile(99) / 1e6;
+        r[7] = latency.getPercentile(99.9) / 1e6;
+        r[8] = latency.getMax() / 1e6;
+        if (csv) {
+            System.out.printf(Locale.ROOT, "%s,%s,%s,%d,%d,%d,%.3f,%.3f,%.1f,%.1f,%.1f,%.1f,%.1f,%.1f%n",
+                    engine, threads, options.get("rate"), (long) r[0], (long) r[1], (long) r[2],
+                    r[3], r[4], r[5], r[6], r[7], r[8], r[9], r[10]);
+        } else {
+            System.out.printf(Locale.ROOT, "%-10s %7s %6s %6d %6d %6d %8.2f %8.2f %9.1f %9.1f %9.1f %9.1f %6.1f %9.1f%n",
+                    engine, threads, options.get("rate"), (long) r[0], (long) r[1], (long) r[2],
+                    r[3], r[4], r[5], r[6], r[7], r[8], r[9], r[10]);
+        }
+    }
+
+    // Total CPU time of this JVM, or -1 where the platform bean does not expose it
+    private static long processCpuNanos(OperatingSystemMXBean os) {
+        return os instanceof com.sun.management.OperatingSystemMXBean
+                ? ((com.sun.management.OperatingSystemMXBean) os).getProcessCpuTime()
+                : -1;
+    }
+
+    private static void resetHeapPeaks() {
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                pool.resetPeakUsage();
+            }
+        }
+    }
+
+    private static long heapPeakBytes() {
+        long total = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP && pool.getPeakUsage() != null) {
+                total += pool.getPeakUsage().getUsed();
+            }
+        }
+        return total;
+    }
+
+    private static List<Path> corpusFiles(Path directory) throws IOException {
+        if (!Files.isDirectory(directory)) {
+            return List.of();
+        }
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(path -> {
+                String name = path.getFileName().toString().toLowerCase(Locale.ROOT);
+                return Arrays.stream(IMAGE_EXTENSIONS).anyMatch(name::endsWith);
+            }).sorted().collect(java.util.stream.Collectors.toList());
+        }
+    }
+
+    private void generateCorpus(Path directory) throws IOException {
+        Files.createDirectories(directory);
+        List<String> sizes = list("sizes");
+        Random random = new Random(Long.parseLong(options.get("seed")));
+        int count = (int) number("images");
+        for (int i = 0; i < count; i++) {
+            String[] size = sizes.get(random.nextInt(sizes.size())).split("x");
+            BufferedImage image = naturalImage(Integer.parseInt(size[0]), Integer.parseInt(size[1]), random);
+            // Mostly JPEG like camera output, with some PNG for the slower lossless codec
+            String format = i % 5 == 4 ? "png" : "jpg";
+            ImageCodec.write(image, format, directory.resolve(String.format("load_%03d.%s", i, format)).toFile());
+        }
+    }
+
+    /**
+     * Photograph-like test content: a sky-like gradient, soft-edged objects, a fractal texture
+     * whose amplitude halves as its frequency doubles (so the spectrum falls off like natural
+     * images do), and a little sensor grain.
+     */
+    static BufferedImage naturalImage(int width, int height, Random random) {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g2d = image.createGraphics();
+        g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        g2d.setPaint(new GradientPaint(0, 0, randomColor(random, 255), 0, height, randomColor(random, 255)));
+        g2d.fillRect(0, 0, width, height);
+        int shapes = 5 + random.nextInt(20);
+        int scale = Math.max(width, height);
+        for (int i = 0; i < shapes; i++) {
+            float x = random.nextFloat() * width;
+            float y = random.nextFloat() * height;
+            float w = (0.05f + 0.4f * random.nextFloat()) * scale;
+            float h = (0.05f + 0.4f * random.nextFloat()) * scale;
+            g2d.setPaint(new GradientPaint(x, y, randomColor(random, 160 + random.nextInt(96)),
+                    x + w, y + h, randomColor(random, 160 + random.nextInt(96))));
+            if (random.nextBoolean()) {
+                g2d.fill(new Ellipse2D.Float(x - w / 2, y - h / 2, w, h));
+            } else {
+                g2d.fill(new RoundRectangle2D.Float(x - w / 2, y - h / 2, w, h, w / 4, h / 4));
+            }
+            if (random.nextInt(3) == 0) {
+                g2d.setColor(randomColor(random, 255));
+                g2d.setStroke(new BasicStroke(1 + random.nextInt(Math.max(1, scale / 200))));
+                g2d.drawLine((int) x, (int) y, random.nextInt(width), random.nextInt(height));
+            }
+        }
+        g2d.dispose();
+
+        float[] texture = fractalNoise(width, height, Math.max(8, scale / 4), 6, random);
+        int[] pixels = MainApp.GaussianBlur.rgbPixels(image);
+        for (int i = 0; i < pixels.length; i++) {
+            float shade = 0.65f + 0.7f * texture[i];
+            int grain = (int) Math.round(random.nextGaussian() * 2);
+            int pixel = pixels[i];
+            int r = clamp((int) (((pixel >> 16) & 0xFF) * shade) + grain);
+            int g = clamp((int) (((pixel >> 8) & 0xFF) * shade) + grain);
+            int b = clamp((int) ((pixel & 0xFF) * shade) + grain);
+            pixels[i] = (r << 16) | (g << 8) | b;
+        }
+        return image;
+    }
+
+    // Octaves of smoothly interpolated value noise, normalized to 0..1
+    private static float[] fractalNoise(int width, int height, int cellSize, int octaves, Random random) {
+        float[] noise = new float[width * height];
+        float amplitude = 1;
+        float total = 0;
+        for (int octave = 0; octave < octaves && cellSize >= 1; octave++, cellSize /= 2, amplitude /= 2) {
+            int gridWidth = width / cellSize + 2;
+            int gridHeight = height / cellSize + 2;
+            float[] grid = new float[gridWidth * gridHeight];
+            for (int i = 0; i < grid.length; i++) {
+                grid[i] = random.nextFloat();
+            }
+            for (int y = 0; y < height; y++) {
+                int gy = y / cellSize;
+                float ty = smooth((y % cellSize) / (float) cellSize);
+                int row0 = gy * gridWidth;
+                int row1 = row0 + gridWidth;
+                for (int x = 0; x < width; x++) {
+                    int gx = x / cellSize;
+                    float tx = smooth((x % cellSize) / (float) cellSize);
+                    float top = grid[row0 + gx] + (grid[row0 + gx + 1] - grid[row0 + gx]) * tx;
+                    float bottom = grid[row1 + gx] + (grid[row1 + gx + 1] - grid[row1 + gx]) * tx;
+                    noise[y * width + x] += amplitude * (top + (bottom - top) * ty);
+                }
+            }
+            total += amplitude;
+        }
+        for (int i = 0; i < noise.length; i++) {
+            noise[i] /= total;
+        }
+        return noise;
+    }
+
+    private static float smooth(float t) {
+        return t * t * (3 - 2 * t);
+    }
+
+    private static Color randomColor(Random random, int alpha) {
+        return new Color(random.nextInt(256), random.nextInt(256), random.nextInt(256), alpha);
+    }
+
+    private static int clamp(int value) {
+        return Math.min(255, Math.max(0, value));
+    }
+
+    private static String joinNumbers(double[] values) {
+        StringBuilder line = new StringBuilder();
+        for (double value : values) {
+            line.append(line.length() == 0 ? "" : " ").append(value);
+        }
+        return line.toString();
+    }
+
+    private static void deleteTree(Path root) {
+        if (!Files.exists(root)) {
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(root)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        } catch (IOException e) {
+            // Best effort: leftovers live in a temporary directory
+        }
+    }
+}
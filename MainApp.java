@@ -2,23 +2,175 @@ package final_project;
 
 import java.awt.Color;
 import java.awt.Graphics2D;
+import java.awt.Point;
+import java.awt.Rectangle;
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.awt.image.WritableRaster;
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.util.*;
 import java.util.List;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+import java.util.stream.Stream;
 import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
 
 public class MainApp {
 
-    public static class GaussianBlur {
+    public static class GaussianBlur implements Filter {
+        /**
+         * Convolution strategy. DIRECT applies the full 2D kernel (kernelSize^2 taps per pixel),
+         * SEPARABLE runs a horizontal then a vertical 1D pass (2*kernelSize taps per pixel), and
+         * VECTOR runs the separable passes on the JDK Vector API when jdk.incubator.vector is
+         * available (--add-modules jdk.incubator.vector), falling back to SEPARABLE otherwise.
+         * BOX approximates the Gaussian with three successive box blurs computed as running
+         * sums, so its cost per pixel does not depend on sigma; see convolveBox for its accuracy.
+         * Below BOX_MIN_SIGMA (2) a BOX blur runs SEPARABLE instead, and getEngine() says so.
+         * FIXED runs the separable passes in integer arithmetic with all channels of a pixel
+         * packed into one long; see convolveFixed.
+         */
+        public enum Engine { DIRECT, SEPARABLE, VECTOR, BOX, FIXED }
+
+        private static final int BOX_PASSES = 3;
+        // Adding and subtracting this rounds a double in [0, 2^35) to a multiple of 2^-16
+        private static final double BOX_GRID = 1.5 * (1L << 36);
+        // Below this BOX's odd box widths are too coarse and SEPARABLE runs instead
+        static final float BOX_MIN_SIGMA = 2f;
+
+        // FIXED engine: weights sum to 2^H_BITS in the horizontal pass and 2^V_BITS in the
+        // vertical one, and the intermediate rows keep FRACTION_BITS below the 8-bit value
+        private static final int FIXED_H_BITS = 13;
+        private static final int FIXED_V_BITS = 15;
+        private static final int FIXED_FRACTION_BITS = 8;
+        // Horizontal accumulator lanes: red at bit 42, green at 21, blue at 0
+        private static final int FIXED_LANE = 21;
+        // Intermediate lanes: red at bit 32, green at 16, blue at 0; red and blue are summed together
+        private static final long FIXED_RED_BLUE = 0x0000FFFF0000FFFFL;
+
+        /**
+         * Separable convolution of the window [x0, x1) x [y0, y1) with the given 1D kernel, using
+         * the same src/dst addressing as GaussianBlur.convolve.
+         */
+        interface SeparableConvolver {
+            void convolve(int[] src, int srcWidth, int[] dst, int dstX, int dstY, int dstStride,
+                          int x0, int y0, int x1, int y1, float[] kernel1D);
+        }
+
+        // Null when the incubator module is not in the boot layer or fails to link
+        private static final SeparableConvolver VECTOR_CONVOLVER = loadVectorConvolver();
+
         private final float[][] kernel;
+        private final float[] kernelRows;
+        private final float[] kernel1D;
+        private final int[] fixedHorizontal;
+        private final int[] fixedVertical;
+        private final float sigma;
         private final int kernelSize;
+        private final int[] boxRadii;
+        private final int boxHalo;
+        private final Engine engine;
+        // Point-wise step fused into the output of every convolution, or null; see fuse()
+        private final PointFilter post;
+        private volatile Metrics metrics;
+        private volatile BufferPool buffers;
+        // Null: whatever TileTuner.profile() has for this engine, kernel and pool
+        private volatile TileTuner.Tiling tiling;
 
         public GaussianBlur(float sigma) {
+            this(sigma, Engine.DIRECT);
+        }
+
+        public GaussianBlur(float sigma, Engine engine) {
+            this.sigma = sigma;
             this.kernelSize = (int) Math.ceil(sigma * 3) * 2 + 1;
             this.kernel = createGaussianKernel(sigma);
+            this.kernelRows = flattenRowMajor(kernel);
+            this.kernel1D = createGaussianKernel1D(sigma);
+            this.fixedHorizontal = quantize(kernel1D, FIXED_H_BITS);
+            this.fixedVertical = quantize(kernel1D, FIXED_V_BITS);
+            this.boxRadii = createBoxRadii(sigma, BOX_PASSES);
+            this.boxHalo = Arrays.stream(boxRadii).sum();
+            this.engine = engine == Engine.BOX && sigma < BOX_MIN_SIGMA ? Engine.SEPARABLE : engine;
+            this.post = null;
+        }
+
+        // Same kernels as base with post applied to each output pixel
+        private GaussianBlur(GaussianBlur base, PointFilter post) {
+            this.sigma = base.sigma;
+            this.kernelSize = base.kernelSize;
+            this.kernel = base.kernel;
+            this.kernelRows = base.kernelRows;
+            this.kernel1D = base.kernel1D;
+            this.fixedHorizontal = base.fixedHorizontal;
+            this.fixedVertical = base.fixedVertical;
+            this.boxRadii = base.boxRadii;
+            this.boxHalo = base.boxHalo;
+            this.engine = base.engine;
+            this.post = post;
+            this.metrics = base.metrics;
+            this.buffers = base.buffers;
+            this.tiling = base.tiling;
+        }
+
+        public Engine getEngine() {
+            return engine;
+        }
+
+        public float getSigma() {
+            return sigma;
+        }
+
+        @Override
+        public String getParameters() {
+            String parameters = "sigma=" + Float.floatToIntBits(sigma) + "|engine=" + engine;
+            return post == null ? parameters : parameters + ">" + post.getParameters();
+        }
+
+        /**
+         * Blur then next, with next applied to each pixel as the convolution packs it (the VECTOR
+         * engine applies it to each finished tile instead).
+         */
+        @Override
+        public GaussianBlur fuse(PointFilter next) {
+            return new GaussianBlur(this, post == null ? next : post.fuse(next));
+        }
+
+        // Pixels closer than this to the image edge are not convolved and get the border value
+        int getKernelRadius() {
+            return kernelSize / 2;
+        }
+
+        private int borderValue() {
+            return post == null ? 0 : post.apply(0);
+        }
+
+        public static boolean isVectorEngineAvailable() {
+            return VECTOR_CONVOLVER != null;
+        }
+
+        private static SeparableConvolver loadVectorConvolver() {
+            if (ModuleLayer.boot().findModule("jdk.incubator.vector").isEmpty()) {
+                return null;
+            }
+            try {
+                return (SeparableConvolver) Class.forName(MainApp.class.getPackageName() + ".VectorConvolution")
+                        .getDeclaredConstructor().newInstance();
+            } catch (ReflectiveOperationException | LinkageError e) {
+                return null;
+            }
         }
 
         private float[][] createGaussianKernel(float sigma) {
@@ -46,209 +198,996 @@ public class MainApp {
             return kernel;
         }
 
-        public BufferedImage applySequential(BufferedImage input) {
+        // kernel[kx][ky] laid out as [ky * kernelSize + kx] so the inner loop walks memory in order
+        private float[] flattenRowMajor(float[][] kernel) {
+            float[] rows = new float[kernelSize * kernelSize];
+            for (int ky = 0; ky < kernelSize; ky++) {
+                for (int kx = 0; kx < kernelSize; kx++) {
+                    rows[ky * kernelSize + kx] = kernel[kx][ky];
+                }
+            }
+            return rows;
+        }
+
+        // The 2D kernel is the outer product of this one, so both engines produce the same weights.
+        private float[] createGaussianKernel1D(float sigma) {
+            int size = kernelSize;
+            float[] kernel = new float[size];
+            float sum = 0.0f;
+            int center = size / 2;
+
+            for (int i = 0; i < size; i++) {
+                int d = i - center;
+                float value = (float) Math.exp(-(d * d) / (2 * sigma * sigma));
+                kernel[i] = value;
+                sum += value;
+            }
+
+            for (int i = 0; i < size; i++) {
+                kernel[i] /= sum;
+            }
+
+            return kernel;
+        }
+
+        /**
+         * The kernel scaled to integers summing to exactly 2^bits: each weight is rounded, and
+         * the rounding error is folded into the centre weight so the sum stays exact and flat
+         * areas come out unchanged. With bits <= 15 every weight fits in 16 bits.
+         */
+        private static int[] quantize(float[] kernel, int bits) {
+            int[] weights = new int[kernel.length];
+            int sum = 0;
+            for (int i = 0; i < kernel.length; i++) {
+                weights[i] = Math.round(kernel[i] * (1 << bits));
+                sum += weights[i];
+            }
+            weights[kernel.length / 2] += (1 << bits) - sum;
+            return weights;
+        }
+
+        /**
+         * Radii of n box filters whose successive application has variance closest to sigma^2:
+         * m boxes of odd width wl and n - m of width wl + 2 (Kovesi, "Fast almost-Gaussian filtering").
+         */
+        private static int[] createBoxRadii(float sigma, int n) {
+            double idealWidth = Math.sqrt(12.0 * sigma * sigma / n + 1);
+            int wl = (int) Math.floor(idealWidth);
+            if (wl % 2 == 0) {
+                wl--;
+            }
+            int wu = wl + 2;
+            double idealM = (12.0 * sigma * sigma - n * wl * wl - 4.0 * n * wl - 3.0 * n) / (-4.0 * wl - 4);
+            int m = (int) Math.round(idealM);
+
+            int[] radii = new int[n];
+            for (int i = 0; i < n; i++) {
+                radii[i] = ((i < m ? wl : wu) - 1) / 2;
+            }
+            return radii;
+        }
+
+        @Override
+        public BufferedImage applySequential(BufferedImage input, BufferedImage output) {
             int width = input.getWidth();
             int height = input.getHeight();
-            BufferedImage output = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+            filter(Buffer.of(input), Buffer.of(output), 0, 0, width, height, width, height);
+            return output;
+        }
+
+        public BufferedImage applyParallel(BufferedImage input) {
+            return applyParallel(input, ForkJoinPool.commonPool());
+        }
+
+        @Override
+        public void filter(Buffer src, Buffer dst, int x0, int y0, int x1, int y1, int imageWidth, int imageHeight) {
+            int offset = kernelSize / 2;
+            int vx0 = Math.max(x0, offset);
+            int vy0 = Math.max(y0, offset);
+            int vx1 = Math.min(x1, imageWidth - offset);
+            int vy1 = Math.min(y1, imageHeight - offset);
+            long start = System.nanoTime();
+            convolve(src.pixels, src.width, dst.pixels, dst.x - src.x, dst.y - src.y, dst.width,
+                    vx0 - src.x, vy0 - src.y, vx1 - src.x, vy1 - src.y);
+            recordConvolve(start);
+            dst.fillOutside(x0, y0, x1, y1, vx0, vy0, vx1, vy1, borderValue());
+        }
 
+        /**
+         * Blurs the window on the given long-lived pool. BlurTask leaves read their neighbours
+         * straight from src and write their tiles straight into dst, so nothing is copied or
+         * merged afterwards. Used by applyParallel for whole images and by the out-of-core path
+         * for horizontal strips.
+         */
+        @Override
+        public void filterParallel(Buffer src, Buffer dst, int x0, int y0, int x1, int y1,
+                                   int imageWidth, int imageHeight, ForkJoinPool pool) {
             int offset = kernelSize / 2;
+            int vx0 = Math.max(x0, offset);
+            int vy0 = Math.max(y0, offset);
+            int vx1 = Math.min(x1, imageWidth - offset);
+            int vy1 = Math.min(y1, imageHeight - offset);
+            long start = System.nanoTime();
+            if (vx0 < vx1 && vy0 < vy1) {
+                pool.invoke(new BlurTask(tilingFor(pool), src.pixels, src.width, dst.pixels,
+                        dst.x - src.x, dst.y - src.y, dst.width, vx0 - src.x, vy0 - src.y, vx1 - src.x, vy1 - src.y));
+            }
+            recordConvolve(start);
+            dst.fillOutside(x0, y0, x1, y1, vx0, vy0, vx1, vy1, borderValue());
+        }
 
-            for (int y = offset; y < height - offset; y++) {
-                for (int x = offset; x < width - offset; x++) {
-                    float r = 0, g = 0, b = 0;
+        /**
+         * Blurs src into dst, two off-heap planar images of the same size, on the given pool, with
+         * the same tiling and output as applyParallel for every engine. SEPARABLE convolves the
+         * planes in place in native memory. The other engines copy each tile plus the context
+         * they read around it into a packed int[] of the tile's size, run their usual convolution
+         * on it and write the tile back, so the heap only ever holds a tile per worker. Images far
+         * larger than the heap (or than an int[] raster) can therefore be blurred by any engine.
+         * The border band and fused point-wise steps behave as in filter.
+         */
+        public void applyPlanar(PlanarImage src, PlanarImage dst, ForkJoinPool pool) {
+            int width = src.getWidth();
+            int height = src.getHeight();
+            if (dst.getWidth() != width || dst.getHeight() != height) {
+                throw new IllegalArgumentException("Planar images differ in size: " + width + "x" + height
+                        + " and " + dst.getWidth() + "x" + dst.getHeight());
+            }
+            int offset = kernelSize / 2;
+            int vx0 = offset;
+            int vy0 = offset;
+            int vx1 = width - offset;
+            int vy1 = height - offset;
+            long start = System.nanoTime();
+            if (vx0 < vx1 && vy0 < vy1) {
+                pool.invoke(new PlanarTask(tilingFor(pool), src, dst, vx0, vy0, vx1, vy1));
+            }
+            recordConvolve(start);
+            dst.fillOutside(vx0, vy0, vx1, vy1, borderValue());
+        }
 
-                    for (int ky = 0; ky < kernelSize; ky++) {
-                        for (int kx = 0; kx < kernelSize; kx++) {
-                            int px = x + kx - offset;
-                            int py = y + ky - offset;
+        /**
+         * Reports convolution latency (Metrics.STAGE_CONVOLVE) and tile counts to the given
+         * metrics; null turns reporting off.
+         */
+        @Override
+        public void setMetrics(Metrics metrics) {
+            this.metrics = metrics;
+        }
 
-                            Color pixel = new Color(input.getRGB(px, py));
-                            float weight = kernel[kx][ky];
+        /**
+         * Fixes how filterParallel splits windows into BlurTask tiles; null (the default) looks
+         * the tiling up in TileTuner.profile() for this engine, kernel size and pool.
+         */
+        public void setTiling(TileTuner.Tiling tiling) {
+            this.tiling = tiling;
+        }
 
-                            r += pixel.getRed() * weight;
-                            g += pixel.getGreen() * weight;
-                            b += pixel.getBlue() * weight;
-                        }
-                    }
+        private TileTuner.Tiling tilingFor(ForkJoinPool pool) {
+            TileTuner.Tiling t = tiling;
+            return t != null ? t : TileTuner.profile().lookup(engine, kernelSize, pool.getParallelism());
+        }
 
-                    int rgb = new Color(
-                            Math.min(255, Math.max(0, (int) r)),
-                            Math.min(255, Math.max(0, (int) g)),
-                            Math.min(255, Math.max(0, (int) b))
-                    ).getRGB();
+        /**
+         * Leases the SEPARABLE, BOX and FIXED engines' planes from the given pool instead of
+         * allocating them per call (per image sequentially, per tile in parallel); null allocates.
+         */
+        @Override
+        public void setBufferPool(BufferPool buffers) {
+            this.buffers = buffers;
+        }
 
-                    output.setRGB(x, y, rgb);
+        private static float[] leaseFloats(BufferPool pool, int length) {
+            return pool == null ? new float[length] : pool.leaseFloats(length);
+        }
+
+        private static void release(BufferPool pool, float[]... planes) {
+            if (pool != null) {
+                for (float[] plane : planes) {
+                    pool.release(plane);
                 }
             }
+        }
 
-            return output;
+        private static int[] leaseInts(BufferPool pool, int length) {
+            return pool == null ? new int[length] : pool.leaseInts(length);
         }
 
-        public BufferedImage applyParallel(BufferedImage input) {
-            ForkJoinPool pool = new ForkJoinPool();
-            try {
-                BlurTask task = new BlurTask(input, 0, 0, input.getWidth(), input.getHeight());
-                return pool.invoke(task);
-            } finally {
-                pool.shutdown();
+        private static void release(BufferPool pool, int[] plane) {
+            if (pool != null) {
+                pool.release(plane);
             }
         }
 
-        private class BlurTask extends RecursiveTask<BufferedImage> {
-            private static final int THRESHOLD = 50000;
-            private final BufferedImage input;
-            private final int x, y, width, height;
+        private static long[] leaseLongs(BufferPool pool, int length) {
+            return pool == null ? new long[length] : pool.leaseLongs(length);
+        }
+
+        private static void release(BufferPool pool, long[] plane) {
+            if (pool != null) {
+                pool.release(plane);
+            }
+        }
+
+        private void recordConvolve(long startNanos) {
+            Metrics m = metrics;
+            if (m != null) {
+                m.record(Metrics.STAGE_CONVOLVE, System.nanoTime() - startNanos);
+            }
+        }
+
+        /**
+         * Context needed on each side: the kernel radius, or the summed box radii for the BOX
+         * engine when those reach further.
+         */
+        @Override
+        public int getRadius() {
+            return engine == Engine.BOX ? Math.max(kernelSize / 2, boxHalo) : kernelSize / 2;
+        }
+
+        private class BlurTask extends RecursiveAction {
+            private final TileTuner.Tiling tiling;
+            private final int[] src;
+            private final int[] dst;
+            private final int srcWidth;
+            private final int dstX, dstY, dstStride;
+            private final int x0, y0, x1, y1;
+
+            // Same addressing as convolve
+            BlurTask(TileTuner.Tiling tiling, int[] src, int srcWidth, int[] dst, int dstX, int dstY, int dstStride,
+                     int x0, int y0, int x1, int y1) {
+                this.tiling = tiling;
+                this.src = src;
+                this.srcWidth = srcWidth;
+                this.dst = dst;
+                this.dstX = dstX;
+                this.dstY = dstY;
+                this.dstStride = dstStride;
+                this.x0 = x0;
+                this.y0 = y0;
+                this.x1 = x1;
+                this.y1 = y1;
+            }
+
+            @Override
+            protected void compute() {
+                int width = x1 - x0;
+                int height = y1 - y0;
+                if ((long) width * height <= tiling.maxTilePixels) {
+                    convolve(src, srcWidth, dst, dstX, dstY, dstStride, x0, y0, x1, y1);
+                    Metrics m = metrics;
+                    if (m != null) {
+                        m.increment(Metrics.TILES_CONVOLVED);
+                    }
+                } else if (tiling.shape == TileTuner.Shape.STRIPS && height > 1) {
+                    // Full-width row strips
+                    int midY = y0 + height / 2;
+                    invokeAll(subtask(x0, y0, x1, midY), subtask(x0, midY, x1, y1));
+                } else {
+                    int midX = x0 + width / 2;
+                    int midY = y0 + height / 2;
+
+                    invokeAll(
+                            subtask(x0, y0, midX, midY),
+                            subtask(midX, y0, x1, midY),
+                            subtask(x0, midY, midX, y1),
+                            subtask(midX, midY, x1, y1));
+                }
+            }
+
+            private BlurTask subtask(int x0, int y0, int x1, int y1) {
+                return new BlurTask(tiling, src, srcWidth, dst, dstX, dstY, dstStride, x0, y0, x1, y1);
+            }
+        }
 
-            public BlurTask(BufferedImage input, int x, int y, int width, int height) {
-                this.input = input;
-                this.x = x;
-                this.y = y;
-                this.width = width;
-                this.height = height;
+        // BlurTask's splitting over planar images
+        private class PlanarTask extends RecursiveAction {
+            private final TileTuner.Tiling tiling;
+            private final PlanarImage src;
+            private final PlanarImage dst;
+            private final int x0, y0, x1, y1;
+
+            PlanarTask(TileTuner.Tiling tiling, PlanarImage src, PlanarImage dst, int x0, int y0, int x1, int y1) {
+                this.tiling = tiling;
+                this.src = src;
+                this.dst = dst;
+                this.x0 = x0;
+                this.y0 = y0;
+                this.x1 = x1;
+                this.y1 = y1;
             }
 
             @Override
-            protected BufferedImage compute() {
-                if (width * height <= THRESHOLD) {
-                    return blurRegionWithPadding(input, x, y, width, height);
+            protected void compute() {
+                int width = x1 - x0;
+                int height = y1 - y0;
+                if ((long) width * height <= tiling.maxTilePixels) {
+                    if (engine == Engine.SEPARABLE) {
+                        src.convolve(dst, kernel1D, x0, y0, x1, y1, post);
+                    } else {
+                        convolveBlock();
+                    }
+                    Metrics m = metrics;
+                    if (m != null) {
+                        m.increment(Metrics.TILES_CONVOLVED);
+                    }
+                } else if (tiling.shape == TileTuner.Shape.STRIPS && height > 1) {
+                    int midY = y0 + height / 2;
+                    invokeAll(subtask(x0, y0, x1, midY), subtask(x0, midY, x1, y1));
                 } else {
-                    int midX = width / 2;
-                    int midY = height / 2;
+                    int midX = x0 + width / 2;
+                    int midY = y0 + height / 2;
+
+                    invokeAll(
+                            subtask(x0, y0, midX, midY),
+                            subtask(midX, y0, x1, midY),
+                            subtask(x0, midY, midX, y1),
+                            subtask(midX, midY, x1, y1));
+                }
+            }
 
-                    BlurTask topLeft = new BlurTask(input, x, y, midX, midY);
-                    BlurTask topRight = new BlurTask(input, x + midX, y, width - midX, midY);
-                    BlurTask bottomLeft = new BlurTask(input, x, y + midY, midX, height - midY);
-                    BlurTask bottomRight = new BlurTask(input, x + midX, y + midY, width - midX, height - midY);
+            private PlanarTask subtask(int x0, int y0, int x1, int y1) {
+                return new PlanarTask(tiling, src, dst, x0, y0, x1, y1);
+            }
 
-                    topLeft.fork();
-                    topRight.fork();
-                    bottomLeft.fork();
+            /**
+             * The tile through convolve on heap copies. The block read is exactly what convolve
+             * would read of a whole-image int[] (BOX's context clamped to the image edges as
+             * there), so the output is bit-identical to applyParallel's.
+             */
+            private void convolveBlock() {
+                int halo = engine == Engine.BOX ? boxHalo : kernelSize / 2;
+                int bx0 = Math.max(0, x0 - halo);
+                int by0 = Math.max(0, y0 - halo);
+                int blockWidth = Math.min(src.getWidth(), x1 + halo) - bx0;
+                int blockHeight = Math.min(src.getHeight(), y1 + halo) - by0;
+                int cols = x1 - x0;
+                int rows = y1 - y0;
+                BufferPool pool = buffers;
+                int[] block = leaseInts(pool, blockWidth * blockHeight);
+                int[] tile = leaseInts(pool, cols * rows);
+                src.readBlock(bx0, by0, blockWidth, blockHeight, block);
+                convolve(block, blockWidth, tile, x0 - bx0, y0 - by0, cols,
+                        x0 - bx0, y0 - by0, x1 - bx0, y1 - by0);
+                dst.writeBlock(x0, y0, cols, rows, tile);
+                release(pool, block);
+                release(pool, tile);
+            }
+        }
 
-                    BufferedImage br = bottomRight.compute();
-                    BufferedImage bl = bottomLeft.join();
-                    BufferedImage tr = topRight.join();
-                    BufferedImage tl = topLeft.join();
+        /**
+         * Returns the packed 0xRRGGBB pixels backing the image. Images that are not a plain
+         * TYPE_INT_RGB/TYPE_INT_ARGB raster are converted once up front, so the convolution
+         * loops only ever index an int[].
+         */
+        static int[] rgbPixels(BufferedImage image) {
+            int type = image.getType();
+            WritableRaster raster = image.getRaster();
+            if ((type == BufferedImage.TYPE_INT_RGB || type == BufferedImage.TYPE_INT_ARGB)
+                    && raster.getParent() == null
+                    && raster.getDataBuffer().getSize() == image.getWidth() * image.getHeight()) {
+                return ((DataBufferInt) raster.getDataBuffer()).getData();
+            }
 
-                    return mergeQuadrants(tl, tr, bl, br);
-                }
+            BufferedImage converted = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_INT_RGB);
+            Graphics2D g2d = converted.createGraphics();
+            g2d.drawImage(image, 0, 0, null);
+            g2d.dispose();
+            return ((DataBufferInt) converted.getRaster().getDataBuffer()).getData();
+        }
+
+        /**
+         * Blurs the output pixels [x0, x1) x [y0, y1) of src (row stride srcWidth) and writes them
+         * into dst, where image pixel (x, y) lands at dst[(y - dstY) * dstStride + (x - dstX)].
+         * The caller keeps the window at least kernelSize / 2 away from the image edges.
+         */
+        private void convolve(int[] src, int srcWidth, int[] dst, int dstX, int dstY, int dstStride,
+                              int x0, int y0, int x1, int y1) {
+            if (x0 >= x1 || y0 >= y1) {
+                return;
+            }
+            switch (engine) {
+                case DIRECT:
+                    convolveDirect(src, srcWidth, dst, dstX, dstY, dstStride, x0, y0, x1, y1);
+                    break;
+                case VECTOR:
+                    if (VECTOR_CONVOLVER != null) {
+                        VECTOR_CONVOLVER.convolve(src, srcWidth, dst, dstX, dstY, dstStride, x0, y0, x1, y1, kernel1D);
+                        if (post != null) {
+                            for (int y = y0; y < y1; y++) {
+                                int dstRow = (y - dstY) * dstStride - dstX;
+                                for (int x = x0; x < x1; x++) {
+                                    dst[dstRow + x] = post.apply(dst[dstRow + x]);
+                                }
+                            }
+                        }
+                    } else {
+                        // No Vector API: the scalar separable path
+                        convolveSeparable(src, srcWidth, dst, dstX, dstY, dstStride, x0, y0, x1, y1);
+                    }
+                    break;
+                case SEPARABLE:
+                    convolveSeparable(src, srcWidth, dst, dstX, dstY, dstStride, x0, y0, x1, y1);
+                    break;
+                case BOX:
+                    convolveBox(src, srcWidth, dst, dstX, dstY, dstStride, x0, y0, x1, y1);
+                    break;
+                case FIXED:
+                    convolveFixed(src, srcWidth, dst, dstX, dstY, dstStride, x0, y0, x1, y1);
+                    break;
+                default:
+                    throw new AssertionError("Unhandled engine " + engine);
             }
         }
 
-        private BufferedImage blurRegion(BufferedImage input, int startX, int startY,
-                                         int regionWidth, int regionHeight) {
-            BufferedImage output = new BufferedImage(regionWidth, regionHeight, BufferedImage.TYPE_INT_RGB);
+        private void convolveDirect(int[] src, int srcWidth, int[] dst, int dstX, int dstY, int dstStride,
+                                    int x0, int y0, int x1, int y1) {
             int offset = kernelSize / 2;
+            float[] weights = kernelRows;
 
-            for (int y = Math.max(offset, startY); y < Math.min(startY + regionHeight - offset, input.getHeight() - offset); y++) {
-                for (int x = Math.max(offset, startX); x < Math.min(startX + regionWidth - offset, input.getWidth() - offset); x++) {
+            for (int y = y0; y < y1; y++) {
+                int dstRow = (y - dstY) * dstStride - dstX;
+                for (int x = x0; x < x1; x++) {
                     float r = 0, g = 0, b = 0;
+                    int w = 0;
 
                     for (int ky = 0; ky < kernelSize; ky++) {
+                        int srcRow = (y + ky - offset) * srcWidth + (x - offset);
                         for (int kx = 0; kx < kernelSize; kx++) {
-                            int px = x + kx - offset;
-                            int py = y + ky - offset;
-
-                            if (px >= 0 && px < input.getWidth() && py >= 0 && py < input.getHeight()) {
-                                Color pixel = new Color(input.getRGB(px, py));
-                                float weight = kernel[kx][ky];
+                            int pixel = src[srcRow + kx];
+                            float weight = weights[w++];
 
-                                r += pixel.getRed() * weight;
-                                g += pixel.getGreen() * weight;
-                                b += pixel.getBlue() * weight;
-                            }
+                            r += ((pixel >> 16) & 0xFF) * weight;
+                            g += ((pixel >> 8) & 0xFF) * weight;
+                            b += (pixel & 0xFF) * weight;
                         }
                     }
 
-                    int rgb = new Color(
-                            Math.min(255, Math.max(0, (int) r)),
-                            Math.min(255, Math.max(0, (int) g)),
-                            Math.min(255, Math.max(0, (int) b))
-                    ).getRGB();
+                    dst[dstRow + x] = pack(r, g, b);
+                }
+            }
+        }
+
+        /**
+         * Horizontal 1D pass over the window plus its vertical halo into planar float buffers,
+         * then a vertical 1D pass into dst.
+         */
+        private void convolveSeparable(int[] src, int srcWidth, int[] dst, int dstX, int dstY, int dstStride,
+                                       int x0, int y0, int x1, int y1) {
+            int offset = kernelSize / 2;
+            int cols = x1 - x0;
+            int rows = (y1 - y0) + 2 * offset;
+            BufferPool pool = buffers;
+            float[] red = leaseFloats(pool, cols * rows);
+            float[] green = leaseFloats(pool, cols * rows);
+            float[] blue = leaseFloats(pool, cols * rows);
+            float[] weights = kernel1D;
+
+            // Horizontal pass: rows y0 - offset .. y1 + offset - 1
+            for (int row = 0; row < rows; row++) {
+                int srcRow = (y0 - offset + row) * srcWidth - offset;
+                int idx = row * cols;
+                for (int x = x0; x < x1; x++, idx++) {
+                    float r = 0, g = 0, b = 0;
+                    int base = srcRow + x;
+
+                    for (int k = 0; k < kernelSize; k++) {
+                        int pixel = src[base + k];
+                        float weight = weights[k];
 
-                    output.setRGB(x - startX, y - startY, rgb);
+                        r += ((pixel >> 16) & 0xFF) * weight;
+                        g += ((pixel >> 8) & 0xFF) * weight;
+                        b += (pixel & 0xFF) * weight;
+                    }
+
+                    red[idx] = r;
+                    green[idx] = g;
+                    blue[idx] = b;
                 }
             }
 
-            return output;
+            // Vertical pass: output row y reads intermediate rows (y - y0) .. (y - y0 + kernelSize - 1)
+            for (int y = y0; y < y1; y++) {
+                int dstRow = (y - dstY) * dstStride - dstX;
+                int base = (y - y0) * cols;
+                for (int x = x0; x < x1; x++, base++) {
+                    float r = 0, g = 0, b = 0;
+                    int idx = base;
+
+                    for (int k = 0; k < kernelSize; k++, idx += cols) {
+                        float weight = weights[k];
+
+                        r += red[idx] * weight;
+                        g += green[idx] * weight;
+                        b += blue[idx] * weight;
+                    }
+
+                    dst[dstRow + x] = pack(r, g, b);
+                }
+            }
+            release(pool, red, green, blue);
         }
 
-        private BufferedImage blurRegionWithPadding(BufferedImage input, int startX, int startY,
-                                                    int regionWidth, int regionHeight) {
+        /**
+         * The separable passes in fixed point, several channels per multiply (SIMD within a
+         * register). The horizontal pass spreads a pixel's three channels into 21-bit lanes of
+         * one long, so a single multiply-add by an integer weight handles all three; with the
+         * weights summing to 2^13 a lane peaks at 255 * 2^13 < 2^21 and never carries into the
+         * next. The intermediate rows keep 8 fractional bits in 16-bit lanes (one long per pixel,
+         * a third less memory than the three float planes). The vertical pass needs wider lanes
+         * for its 2^15 weights, so it sums red and blue together in 32-bit lanes and green alone,
+         * and normalizes with a shift. Nothing can overflow or go out of range, so there is no
+         * clamping either.
+         *
+         * Accuracy: output is truncated like packRgb, and stays within 1 level (of 255) of
+         * SEPARABLE; the quantized weights and the floored intermediates account for well under
+         * one level between them.
+         */
+        private void convolveFixed(int[] src, int srcWidth, int[] dst, int dstX, int dstY, int dstStride,
+                                   int x0, int y0, int x1, int y1) {
             int offset = kernelSize / 2;
-            int paddedX = Math.max(0, startX - offset);
-            int paddedY = Math.max(0, startY - offset);
-            int paddedWidth = Math.min(input.getWidth() - paddedX, regionWidth + 2 * offset);
-            int paddedHeight = Math.min(input.getHeight() - paddedY, regionHeight + 2 * offset);
+            int cols = x1 - x0;
+            int rows = (y1 - y0) + 2 * offset;
+            BufferPool pool = buffers;
+            long[] rows16 = leaseLongs(pool, cols * rows);
+            int[] horizontal = fixedHorizontal;
+            int[] vertical = fixedVertical;
+            int hShift = FIXED_H_BITS - FIXED_FRACTION_BITS;
+
+            // Horizontal pass: rows y0 - offset .. y1 + offset - 1
+            for (int row = 0; row < rows; row++) {
+                int srcRow = (y0 - offset + row) * srcWidth - offset;
+                int idx = row * cols;
+                for (int x = x0; x < x1; x++, idx++) {
+                    long sum = 0;
+                    int base = srcRow + x;
+
+                    for (int k = 0; k < kernelSize; k++) {
+                        long pixel = src[base + k];
+                        long lanes = ((pixel & 0xFF0000L) << (2 * FIXED_LANE - 16))
+                                | ((pixel & 0xFF00L) << (FIXED_LANE - 8))
+                                | (pixel & 0xFFL);
+                        sum += lanes * horizontal[k];
+                    }
 
-            BufferedImage paddedRegion = blurRegion(input, paddedX, paddedY, paddedWidth, paddedHeight);
+                    rows16[idx] = ((sum >>> (2 * FIXED_LANE + hShift)) << 32)
+                            | (((sum >>> (FIXED_LANE + hShift)) & 0xFFFF) << 16)
+                            | ((sum >>> hShift) & 0xFFFF);
+                }
+            }
 
-            BufferedImage cropped = new BufferedImage(regionWidth, regionHeight, BufferedImage.TYPE_INT_RGB);
-            for (int y = 0; y < regionHeight; y++) {
-                for (int x = 0; x < regionWidth; x++) {
-                    int rgb = paddedRegion.getRGB(x + (startX - paddedX), y + (startY - paddedY));
-                    cropped.setRGB(x, y, rgb);
+            // Vertical pass: output row y reads intermediate rows (y - y0) .. (y - y0 + kernelSize - 1)
+            int vShift = FIXED_V_BITS + FIXED_FRACTION_BITS;
+            for (int y = y0; y < y1; y++) {
+                int dstRow = (y - dstY) * dstStride - dstX;
+                int base = (y - y0) * cols;
+                for (int x = x0; x < x1; x++, base++) {
+                    long redBlue = 0;
+                    int green = 0;
+                    int idx = base;
+
+                    for (int k = 0; k < kernelSize; k++, idx += cols) {
+                        long lanes = rows16[idx];
+                        int weight = vertical[k];
+
+                        redBlue += (lanes & FIXED_RED_BLUE) * weight;
+                        green += (int) ((lanes >>> 16) & 0xFFFF) * weight;
+                    }
+
+                    int rgb = (int) (redBlue >>> (32 + vShift)) << 16
+                            | (green >>> vShift) << 8
+                            | (int) ((redBlue & 0xFFFFFFFFL) >>> vShift);
+                    dst[dstRow + x] = post == null ? rgb : post.apply(rgb);
                 }
             }
-            return cropped;
+            release(pool, rows16);
         }
 
-        private BufferedImage mergeQuadrants(BufferedImage tl, BufferedImage tr,
-                                             BufferedImage bl, BufferedImage br) {
-            int totalWidth = tl.getWidth() + tr.getWidth();
-            int totalHeight = tl.getHeight() + bl.getHeight();
-            BufferedImage merged = new BufferedImage(totalWidth, totalHeight, BufferedImage.TYPE_INT_RGB);
+        /**
+         * Iterated box blur over the window plus a halo of the summed box radii (clamped to the
+         * image, with edge pixels replicated past it). Every pass is a horizontal and a vertical
+         * running sum, so a pixel costs 2 * BOX_PASSES additions and subtractions per channel
+         * whatever sigma is, against kernelSize^2 or 2 * kernelSize multiply-adds for the exact
+         * engines.
+         *
+         * Every box average is rounded to a multiple of 2^-16, which a float holds exactly for
+         * values up to 255, so the double running sums never round: each average depends only on
+         * its window and not on where the running sum started, and tiled and sequential output
+         * are bit-identical.
+         *
+         * Accuracy against the exact kernel: the three-box approximation matches sigma^2 to within
+         * the rounding of the box widths and has a slightly flatter peak and shorter tails. For
+         * sigma >= 4 the output stays within 1 level (of 255) of DIRECT even on per-pixel uniform
+         * noise, the worst case; at sigma 2 noise can differ by up to 5 while smooth content stays
+         * within 1. Below BOX_MIN_SIGMA the odd box widths are too coarse (at sigma 0.5 all three
+         * boxes have radius 0), so the constructor substitutes SEPARABLE.
+         */
+        private void convolveBox(int[] src, int srcWidth, int[] dst, int dstX, int dstY, int dstStride,
+                                 int x0, int y0, int x1, int y1) {
+            int srcHeight = src.length / srcWidth;
+            int left = Math.max(0, x0 - boxHalo);
+            int top = Math.max(0, y0 - boxHalo);
+            int width = Math.min(srcWidth, x1 + boxHalo) - left;
+            int height = Math.min(srcHeight, y1 + boxHalo) - top;
+
+            BufferPool pool = buffers;
+            float[] red = leaseFloats(pool, width * height);
+            float[] green = leaseFloats(pool, width * height);
+            float[] blue = leaseFloats(pool, width * height);
+            for (int y = 0; y < height; y++) {
+                int srcRow = (top + y) * srcWidth + left;
+                for (int x = 0, idx = y * width; x < width; x++, idx++) {
+                    int pixel = src[srcRow + x];
+                    red[idx] = (pixel >> 16) & 0xFF;
+                    green[idx] = (pixel >> 8) & 0xFF;
+                    blue[idx] = pixel & 0xFF;
+                }
+            }
 
-            Graphics2D g2d = merged.createGraphics();
-            g2d.drawImage(tl, 0, 0, null);
-            g2d.drawImage(tr, tl.getWidth(), 0, null);
-            g2d.drawImage(bl, 0, tl.getHeight(), null);
-            g2d.drawImage(br, tl.getWidth(), tl.getHeight(), null);
-            g2d.dispose();
+            float[] scratch = leaseFloats(pool, width * height);
+            double[] columnSums = new double[width];
+            for (float[] plane : new float[][]{red, green, blue}) {
+                for (int radius : boxRadii) {
+                    boxHorizontal(plane, scratch, width, height, radius);
+                    boxVertical(scratch, plane, width, height, radius, columnSums);
+                }
+            }
+
+            for (int y = y0; y < y1; y++) {
+                int dstRow = (y - dstY) * dstStride - dstX;
+                int idx = (y - top) * width + (x0 - left);
+                for (int x = x0; x < x1; x++, idx++) {
+                    dst[dstRow + x] = pack(red[idx], green[idx], blue[idx]);
+                }
+            }
+            release(pool, red, green, blue, scratch);
+        }
+
+        private static void boxHorizontal(float[] in, float[] out, int width, int height, int radius) {
+            double scale = 1.0 / (2 * radius + 1);
+            int last = width - 1;
+            for (int y = 0; y < height; y++) {
+                int row = y * width;
+                double sum = (radius + 1) * (double) in[row];
+                for (int j = 1; j <= radius; j++) {
+                    sum += in[row + Math.min(j, last)];
+                }
+                for (int x = 0; x < width; x++) {
+                    out[row + x] = (float) ((sum * scale + BOX_GRID) - BOX_GRID);
+                    sum += in[row + Math.min(x + radius + 1, last)] - in[row + Math.max(x - radius, 0)];
+                }
+            }
+        }
+
+        // Runs one running sum per column, walking the plane row by row to stay cache friendly
+        private static void boxVertical(float[] in, float[] out, int width, int height, int radius, double[] sums) {
+            double scale = 1.0 / (2 * radius + 1);
+            int last = height - 1;
+            for (int x = 0; x < width; x++) {
+                sums[x] = (radius + 1) * (double) in[x];
+            }
+            for (int j = 1; j <= radius; j++) {
+                int row = Math.min(j, last) * width;
+                for (int x = 0; x < width; x++) {
+                    sums[x] += in[row + x];
+                }
+            }
+            for (int y = 0; y < height; y++) {
+                int row = y * width;
+                int addRow = Math.min(y + radius + 1, last) * width;
+                int removeRow = Math.max(y - radius, 0) * width;
+                for (int x = 0; x < width; x++) {
+                    out[row + x] = (float) ((sums[x] * scale + BOX_GRID) - BOX_GRID);
+                    sums[x] += in[addRow + x] - in[removeRow + x];
+                }
+            }
+        }
+
+        // packRgb followed by the fused point-wise step, if any
+        private int pack(float r, float g, float b) {
+            int rgb = packRgb(r, g, b);
+            return post == null ? rgb : post.apply(rgb);
+        }
 
-            return merged;
+        static int packRgb(float r, float g, float b) {
+            int ri = Math.min(255, Math.max(0, (int) r));
+            int gi = Math.min(255, Math.max(0, (int) g));
+            int bi = Math.min(255, Math.max(0, (int) b));
+            return (ri << 16) | (gi << 8) | bi;
         }
     }
 
     public static class Processor {
-        private final GaussianBlur blur;
-        private final ExecutorService executor;
+        // Images this large are tiled even when there are enough images to keep every thread busy
+        private static final long LARGE_IMAGE_PIXELS = 4_000_000L;
+
+        private final Filter filter;
+        private final int threadCount;
+        private final ForkJoinPool pool;
+        private final Metrics metrics = new Metrics();
+        private volatile ResultCache cache;
+        private volatile BiConsumer<String, String> outputListener;
+        private volatile BufferPool buffers;
+        // Per-image filters attached with register, besides filter itself
+        private final Set<Filter> registered = ConcurrentHashMap.newKeySet();
+        // Output files handed out by writeOutput, each with the input it belongs to
+        private final Map<String, String> outputOwners = new ConcurrentHashMap<>();
 
         public Processor(float blurSigma, int threadCount) {
-            this.blur = new GaussianBlur(blurSigma);
-            this.executor = Executors.newFixedThreadPool(threadCount);
+            this(blurSigma, threadCount, GaussianBlur.Engine.DIRECT);
+        }
+
+        public Processor(float blurSigma, int threadCount, GaussianBlur.Engine engine) {
+            this(new GaussianBlur(blurSigma, engine), threadCount);
+        }
+
+        /**
+         * Runs any filter or pipeline (see Filter.then) over each image. threadCount is the whole
+         * core budget: images and the tiles inside them share one ForkJoinPool whose size is
+         * capped at threadCount, and saturation never spawns compensation threads beyond it.
+         */
+        public Processor(Filter filter, int threadCount) {
+            this.filter = filter;
+            this.threadCount = threadCount;
+            this.pool = newComputePool(threadCount);
+            this.buffers = new BufferPool(BufferPool.defaultMaxBytes());
+
+            filter.setMetrics(metrics);
+            filter.setBufferPool(buffers);
+            // -Dblur.autotune=true calibrates tiles for this blur and core count on first use
+            if (Boolean.getBoolean("blur.autotune") && filter instanceof GaussianBlur) {
+                TileTuner.ensureTuned((GaussianBlur) filter, pool);
+            }
+            metrics.gauge("pool.parallelism", pool::getParallelism);
+            metrics.gauge("pool.active", pool::getActiveThreadCount);
+            metrics.gauge("pool.running", pool::getRunningThreadCount);
+            metrics.gauge("pool.queuedTasks", pool::getQueuedTaskCount);
+            metrics.gauge("pool.queuedSubmissions", pool::getQueuedSubmissionCount);
+            metrics.gauge("pool.steals", pool::getStealCount);
+            metrics.gauge("pool.utilization", () -> (double) pool.getActiveThreadCount() / threadCount);
+            // Share of the pool's capacity spent convolving since the metrics were last reset
+            metrics.gauge("pool.busyFraction", () -> {
+                double elapsed = metrics.getElapsedNanos();
+                return elapsed > 0
+                        ? metrics.histogram(Metrics.STAGE_CONVOLVE).getTotal() / (elapsed * threadCount)
+                        : 0;
+            });
+            metrics.gauge("buffers.pooledBytes", () -> buffers == null ? 0 : buffers.getPooledBytes());
+            metrics.gauge("buffers.hits", () -> buffers == null ? 0 : buffers.getHits());
+            metrics.gauge("buffers.misses", () -> buffers == null ? 0 : buffers.getMisses());
+            metrics.startGcPauseTracking();
+            metrics.register("Processor");
+        }
+
+        /**
+         * A ForkJoinPool that never runs more than threadCount workers: the maximum pool size is
+         * capped and saturation lets blocked joins continue without compensation threads.
+         */
+        static ForkJoinPool newComputePool(int threadCount) {
+            return new ForkJoinPool(threadCount, ForkJoinPool.defaultForkJoinWorkerThreadFactory,
+                    null, false, 0, threadCount, 1, p -> true, 60, TimeUnit.SECONDS);
+        }
+
+        /**
+         * Live metrics for this processor and its filter: per-stage latency histograms
+         * (decode, blur, encode, image, convolve), counters, pool gauges and JVM totals.
+         */
+        public Metrics getMetrics() {
+            return metrics;
+        }
+
+        /**
+         * Serves repeated inputs from the given on-disk cache, skipping decode and convolution
+         * on a hit; null disables caching.
+         */
+        public void setResultCache(ResultCache cache) {
+            this.cache = cache;
+        }
+
+        /**
+         * Called with (input path, output path) each time a blurred image has been written to an
+         * output directory, from whichever thread wrote it; null removes the listener.
+         */
+        public void setOutputListener(BiConsumer<String, String> listener) {
+            this.outputListener = listener;
+        }
+
+        /**
+         * Pool for the large per-image buffers: decoded inputs converted to TYPE_INT_RGB, the
+         * filter's scratch planes and, where results are written out rather than returned
+         * (processSequential to a directory, processStreaming, submitToFile), the output images.
+         * Each is leased per image and handed back once the image is done, so a batch of
+         * similar images settles into almost no large allocations. A pool capped at a quarter of
+         * the heap (at most 512 MB) is set by default; null allocates everything afresh.
+         */
+        public synchronized void setBufferPool(BufferPool buffers) {
+            this.buffers = buffers;
+            filter.setBufferPool(buffers);
+            for (Filter imageFilter : registered) {
+                imageFilter.setBufferPool(buffers);
+            }
+        }
+
+        /**
+         * Attaches imageFilter to this processor's metrics and buffer pool so it can be passed to
+         * submitToFile; registering it again does nothing. From then on the filter belongs to this
+         * processor: do not register it with another one, or use it while this one is running.
+         */
+        public synchronized void register(Filter imageFilter) {
+            if (imageFilter != filter && registered.add(imageFilter)) {
+                imageFilter.setMetrics(metrics);
+                imageFilter.setBufferPool(buffers);
+            }
+        }
+
+        // Null when no cache is set
+        private String cacheKey(String path) throws IOException {
+            return cacheKey(path, filter);
+        }
+
+        private String cacheKey(String path, Filter imageFilter) throws IOException {
+            ResultCache c = cache;
+            return c == null ? null : c.keyFor(Path.of(path), imageFilter);
+        }
+
+        private BufferedImage cacheLookup(String key, AtomicInteger hits, AtomicInteger misses) throws IOException {
+            if (key == null) {
+                return null;
+            }
+            BufferedImage cached = cache.get(key);
+            if (cached != null) {
+                hits.incrementAndGet();
+                metrics.increment("cache.hits");
+            } else {
+                misses.incrementAndGet();
+                metrics.increment("cache.misses");
+            }
+            return cached;
+        }
+
+        private void cacheStore(String key, BufferedImage blurred) {
+            if (key == null) {
+                return;
+            }
+            try {
+                cache.put(key, blurred);
+            } catch (IOException e) {
+                System.err.println("Could not cache result: " + e.getMessage());
+            }
+        }
+
+        /**
+         * Decodes straight into a TYPE_INT_RGB image, leased when pooling is on, so the filters
+         * need no conversion copy and the pixels can be recycled.
+         */
+        private BufferedImage decode(String path) throws IOException {
+            long start = System.nanoTime();
+            BufferPool b = buffers;
+            BufferedImage image = ImageCodec.read(Path.of(path), 0, b == null ? ImageCodec.INT_RGB : b::leaseImage);
+            metrics.record(Metrics.STAGE_DECODE, System.nanoTime() - start);
+            return image;
+        }
+
+        // A leased output when the caller hands it back through recycle(), a fresh one otherwise
+        private BufferedImage newOutput(BufferedImage input, boolean pooled) {
+            BufferPool b = buffers;
+            return pooled && b != null
+                    ? b.leaseImage(input.getWidth(), input.getHeight())
+                    : new BufferedImage(input.getWidth(), input.getHeight(), BufferedImage.TYPE_INT_RGB);
+        }
+
+        // Hands an image this processor owns (decoded input or written-out result) to the pool
+        private void recycle(BufferedImage image) {
+            BufferPool b = buffers;
+            if (b != null) {
+                b.release(image);
+            }
+        }
+
+        private void imageDone(BufferedImage image, long imageStartNanos) {
+            metrics.record(Metrics.STAGE_IMAGE, System.nanoTime() - imageStartNanos);
+            metrics.increment(Metrics.IMAGES_PROCESSED);
+            metrics.add(Metrics.PIXELS_PROCESSED, (long) image.getWidth() * image.getHeight());
+        }
+
+        private void failed(String path, Exception e) {
+            metrics.increment(Metrics.IMAGES_FAILED);
+            System.err.println("Error processing " + path + ": " + e.getMessage());
         }
 
         public ProcessingResult processSequential(List<String> imagePaths) {
             long startTime = System.nanoTime();
             List<BufferedImage> results = new ArrayList<>();
+            AtomicInteger cacheHits = new AtomicInteger();
+            AtomicInteger cacheMisses = new AtomicInteger();
+            int failures = 0;
 
             for (String path : imagePaths) {
                 try {
-                    BufferedImage image = ImageIO.read(new File(path));
-                    BufferedImage blurred = blur.applySequential(image);
+                    long imageStart = System.nanoTime();
+                    String key = cacheKey(path);
+                    BufferedImage blurred = cacheLookup(key, cacheHits, cacheMisses);
+                    if (blurred == null) {
+                        blurred = blurSequential(decode(path), false);
+                        cacheStore(key, blurred);
+                    }
                     results.add(blurred);
+                    imageDone(blurred, imageStart);
+                } catch (IOException e) {
+                    failures++;
+                    failed(path, e);
+                }
+            }
+
+            long endTime = System.nanoTime();
+            return new ProcessingResult(results, List.of(), pixelsOf(results), failures, endTime - startTime,
+                    cacheHits.get(), cacheMisses.get());
+        }
+
+        /**
+         * processSequential, writing each blurred image to outputDirectory as soon as it is done
+         * instead of keeping it, so memory stays at about one image whatever the batch size.
+         */
+        public ProcessingResult processSequential(List<String> imagePaths, String outputDirectory) {
+            long startTime = System.nanoTime();
+            new File(outputDirectory).mkdirs();
+            List<String> outputPaths = new ArrayList<>();
+            AtomicInteger cacheHits = new AtomicInteger();
+            AtomicInteger cacheMisses = new AtomicInteger();
+            long pixels = 0;
+            int failures = 0;
+
+            for (String path : imagePaths) {
+                try {
+                    long imageStart = System.nanoTime();
+                    String key = cacheKey(path);
+                    BufferedImage blurred = cacheLookup(key, cacheHits, cacheMisses);
+                    if (blurred == null) {
+                        blurred = blurSequential(decode(path), true);
+                        cacheStore(key, blurred);
+                    }
+                    outputPaths.add(writeOutput(path, blurred, outputDirectory).getAbsolutePath());
+                    pixels += (long) blurred.getWidth() * blurred.getHeight();
+                    imageDone(blurred, imageStart);
+                    recycle(blurred);
                 } catch (IOException e) {
-                    System.err.println("Error processing " + path + ": " + e.getMessage());
+                    failures++;
+                    failed(path, e);
                 }
             }
 
             long endTime = System.nanoTime();
-            return new ProcessingResult(results, endTime - startTime);
+            return new ProcessingResult(List.of(), outputPaths, pixels, failures, endTime - startTime,
+                    cacheHits.get(), cacheMisses.get());
+        }
+
+        private static long pixelsOf(List<BufferedImage> images) {
+            return images.stream().mapToLong(i -> (long) i.getWidth() * i.getHeight()).sum();
         }
 
         public ProcessingResult processParallel(List<String> imagePaths) {
             long startTime = System.nanoTime();
+            AtomicInteger notStarted = new AtomicInteger(imagePaths.size());
+            AtomicInteger cacheHits = new AtomicInteger();
+            AtomicInteger cacheMisses = new AtomicInteger();
 
             List<CompletableFuture<BufferedImage>> futures = imagePaths.stream()
                     .map(path -> CompletableFuture.supplyAsync(() -> {
                         try {
-                            BufferedImage image = ImageIO.read(new File(path));
-                            return blur.applyParallel(image);
+                            long imageStart = System.nanoTime();
+                            int waiting = notStarted.decrementAndGet();
+                            String key = cacheKey(path);
+                            BufferedImage blurred = cacheLookup(key, cacheHits, cacheMisses);
+                            if (blurred == null) {
+                                blurred = blurScheduled(decode(path), waiting, false);
+                                cacheStore(key, blurred);
+                            }
+                            imageDone(blurred, imageStart);
+                            return blurred;
                         } catch (IOException e) {
-                            System.err.println("Error processing " + path + ": " + e.getMessage());
+                            failed(path, e);
                             return null;
                         }
-                    }, executor))
+                    }, pool))
                     .toList();
 
             List<BufferedImage> results = futures.stream()
@@ -257,21 +1196,427 @@ public class MainApp {
                     .toList();
 
             long endTime = System.nanoTime();
-            return new ProcessingResult(results, endTime - startTime);
+            return new ProcessingResult(results, List.of(), pixelsOf(results), imagePaths.size() - results.size(),
+                    endTime - startTime, cacheHits.get(), cacheMisses.get());
+        }
+
+        public ProcessingResult processStreaming(List<String> imagePaths, String outputDirectory) {
+            return processStreaming(imagePaths, outputDirectory, 2, 2, 2 * threadCount);
+        }
+
+        /**
+         * Decode -> blur -> encode pipeline. Each stage has its own threads and hands images to the
+         * next through a bounded queue, so at most about 2 * queueCapacity decoded or blurred images
+         * are alive at once however many paths are given, and disk I/O overlaps the convolution.
+         * Blurred images are written to outputDirectory and only their paths are kept.
+         */
+        public ProcessingResult processStreaming(List<String> imagePaths, String outputDirectory,
+                                                 int decodeThreads, int encodeThreads, int queueCapacity) {
+            long startTime = System.nanoTime();
+            new File(outputDirectory).mkdirs();
+
+            Iterator<String> pending = imagePaths.iterator();
+            BlockingQueue<StreamItem> decoded = new ArrayBlockingQueue<>(queueCapacity);
+            BlockingQueue<StreamItem> blurred = new ArrayBlockingQueue<>(queueCapacity);
+            List<String> outputPaths = Collections.synchronizedList(new ArrayList<>());
+            AtomicInteger failures = new AtomicInteger();
+            AtomicLong pixels = new AtomicLong();
+            AtomicInteger cacheHits = new AtomicInteger();
+            AtomicInteger cacheMisses = new AtomicInteger();
+
+            ExecutorService decoders = Executors.newFixedThreadPool(decodeThreads);
+            ExecutorService blurrers = Executors.newFixedThreadPool(threadCount);
+            ExecutorService encoders = Executors.newFixedThreadPool(encodeThreads);
+            metrics.gauge("queue.decoded.depth", decoded::size);
+            metrics.gauge("queue.blurred.depth", blurred::size);
+
+            for (int i = 0; i < decodeThreads; i++) {
+                decoders.execute(() -> {
+                    while (true) {
+                        String path;
+                        synchronized (pending) {
+                            if (!pending.hasNext()) {
+                                return;
+                            }
+                            path = pending.next();
+                        }
+                        try {
+                            long imageStart = System.nanoTime();
+                            String key = cacheKey(path);
+                            BufferedImage cached = cacheLookup(key, cacheHits, cacheMisses);
+                            if (cached != null) {
+                                // Hits skip the blur stage and go straight to the encoders
+                                pixels.addAndGet((long) cached.getWidth() * cached.getHeight());
+                                blurred.put(new StreamItem(path, cached, imageStart, null));
+                            } else {
+                                decoded.put(new StreamItem(path, decode(path), imageStart, key));
+                            }
+                        } catch (IOException | RuntimeException e) {
+                            failures.incrementAndGet();
+                            failed(path, e);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                            return;
+                        }
+                    }
+                });
+            }
+
+            // Blur stage threads only hand work to the shared pool, so compute stays within threadCount
+            for (int i = 0; i < threadCount; i++) {
+                blurrers.execute(() -> {
+                    try {
+                        for (StreamItem item = decoded.take(); item != StreamItem.END; item = decoded.take()) {
+                            BufferedImage image = item.image;
+                            try {
+                                BufferedImage result = pool.invoke(ForkJoinTask.adapt(
+                                        () -> blurScheduled(image, decoded.size(), true)));
+                                pixels.addAndGet((long) result.getWidth() * result.getHeight());
+                                cacheStore(item.cacheKey, result);
+                                blurred.put(new StreamItem(item.path, result, item.startNanos, null));
+                            } catch (RuntimeException e) {
+                                failures.incrementAndGet();
+                                failed(item.path, e);
+                            }
+                        }
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                });
+            }
+
+            for (int i = 0; i < encodeThreads; i++) {
+                encoders.execute(() -> {
+                    try {
+                        for (StreamItem item = blurred.take(); item != StreamItem.END; item = blurred.take()) {
+                            try {
+                                outputPaths.add(writeOutput(item.path, item.image, outputDirectory).getAbsolutePath());
+                                imageDone(item.image, item.startNanos);
+                            } catch (IOException e) {
+                                failures.incrementAndGet();
+                                failed(item.path, e);
+                            }
+                            recycle(item.image);
+                        }
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                });
+            }
+
+            try {
+                awaitStage(decoders);
+                endStream(decoded, threadCount);
+                awaitStage(blurrers);
+                endStream(blurred, encodeThreads);
+                awaitStage(encoders);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                decoders.shutdownNow();
+                blurrers.shutdownNow();
+                encoders.shutdownNow();
+            }
+            metrics.removeGauge("queue.decoded.depth");
+            metrics.removeGauge("queue.blurred.depth");
+
+            long endTime = System.nanoTime();
+            return new ProcessingResult(List.of(), new ArrayList<>(outputPaths), pixels.get(),
+                    failures.get(), endTime - startTime, cacheHits.get(), cacheMisses.get());
+        }
+
+        /**
+         * Blurs one file on the shared pool and writes it to outputDirectory, completing with the
+         * output path. Used for work that arrives one image at a time (see FolderWatcher).
+         */
+        public CompletableFuture<String> submitToFile(String path, String outputDirectory) {
+            return submitToFile(path, outputDirectory, filter);
+        }
+
+        /**
+         * submitToFile with another filter for this one image (a different sigma, say), run on
+         * the same pool. A filter not registered yet is registered on first use (see register).
+         */
+        public CompletableFuture<String> submitToFile(String path, String outputDirectory, Filter imageFilter) {
+            if (imageFilter != filter && !registered.contains(imageFilter)) {
+                register(imageFilter);
+            }
+            return CompletableFuture.supplyAsync(() -> {
+                try {
+                    long imageStart = System.nanoTime();
+                    String key = cacheKey(path, imageFilter);
+                    BufferedImage blurred = cacheLookup(key, new AtomicInteger(), new AtomicInteger());
+                    if (blurred == null) {
+                        blurred = blurScheduled(decode(path), pool.getQueuedSubmissionCount(), true, imageFilter);
+                        cacheStore(key, blurred);
+                    }
+                    File outFile = writeOutput(path, blurred, outputDirectory);
+                    imageDone(blurred, imageStart);
+                    recycle(blurred);
+                    return outFile.getAbsolutePath();
+                } catch (IOException e) {
+                    failed(path, e);
+                    throw new CompletionException(e);
+                }
+            }, pool);
+        }
+
+        /**
+         * Encodes to outputDirectory/<name>_blurred.<ext>, keeping the input's format when a
+         * writer exists (PNG otherwise). Inputs with the same file name from different directories
+         * get <name>_blurred_1.<ext>, <name>_blurred_2.<ext> and so on, while the same input
+         * processed again keeps its name. The file is written to a unique temporary file and moved
+         * into place, so readers of the output directory never see a partial image.
+         */
+        private File writeOutput(String path, BufferedImage image, String outputDirectory) throws IOException {
+            String name = new File(path).getName();
+            int dot = name.lastIndexOf('.');
+            String format = dot > 0 ? name.substring(dot + 1).toLowerCase() : "png";
+            if (!ImageCodec.canWrite(format)) {
+                format = "png";
+            }
+            File outFile = claimOutput(path, outputDirectory, dot > 0 ? name.substring(0, dot) : name, format);
+            File tempFile = Files.createTempFile(Path.of(outputDirectory), "." + outFile.getName(), ".part").toFile();
+
+            long encodeStart = System.nanoTime();
+            try {
+                if (!ImageCodec.write(image, format, tempFile)) {
+                    throw new IOException("No writer for format " + format);
+                }
+                Files.move(tempFile.toPath(), outFile.toPath(),
+                        StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(tempFile.toPath());
+            }
+            metrics.record(Metrics.STAGE_ENCODE, System.nanoTime() - encodeStart);
+            BiConsumer<String, String> listener = outputListener;
+            if (listener != null) {
+                listener.accept(path, outFile.getAbsolutePath());
+            }
+            return outFile;
+        }
+
+        private File claimOutput(String path, String outputDirectory, String stem, String format) {
+            String input = new File(path).getAbsolutePath();
+            for (int n = 0; ; n++) {
+                File candidate = new File(outputDirectory, stem + "_blurred" + (n == 0 ? "" : "_" + n) + "." + format);
+                String owner = outputOwners.putIfAbsent(candidate.getAbsolutePath(), input);
+                if (owner == null || owner.equals(input)) {
+                    return candidate;
+                }
+            }
+        }
+
+        private static void awaitStage(ExecutorService stage) throws InterruptedException {
+            stage.shutdown();
+            stage.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        }
+
+        // One END marker per consumer, queued behind any items still in flight
+        private static void endStream(BlockingQueue<StreamItem> queue, int consumers) throws InterruptedException {
+            for (int i = 0; i < consumers; i++) {
+                queue.put(StreamItem.END);
+            }
+        }
+
+        private static final class StreamItem {
+            static final StreamItem END = new StreamItem(null, null, 0, null);
+
+            final String path;
+            final BufferedImage image;
+            final long startNanos;
+            final String cacheKey;
+
+            StreamItem(String path, BufferedImage image, long startNanos, String cacheKey) {
+                this.path = path;
+                this.image = image;
+                this.startNanos = startNanos;
+                this.cacheKey = cacheKey;
+            }
+        }
+
+        /**
+         * Blurs an image that may not fit in the heap. Horizontal strips of stripRows rows are
+         * decoded through ImageReader source regions, blurred in parallel on the pool, and written
+         * through ImageWriter.replacePixels as soon as they are done. Only the last
+         * 2 * filter.getRadius() input rows are carried from one strip to the next, so peak memory is
+         * about width * (2 * stripRows + 2 * halo) pixels whatever the image height. The output
+         * format comes from the extension of outputPath and must support incremental writes
+         * (TIFF does; PNG and JPEG do not). Readers that cannot seek (JPEG) re-scan earlier rows
+         * for every strip, so TIFF input is much faster.
+         */
+        public ProcessingResult processOutOfCore(String inputPath, String outputPath, int stripRows)
+                throws IOException {
+            long startTime = System.nanoTime();
+            String name = new File(outputPath).getName();
+            String format = name.substring(name.lastIndexOf('.') + 1).toLowerCase();
+
+            try (ImageInputStream in = ImageIO.createImageInputStream(new File(inputPath))) {
+                if (in == null) {
+                    throw new IOException("Can't read input file!");
+                }
+                Iterator<ImageReader> readers = ImageIO.getImageReaders(in);
+                Iterator<ImageWriter> writers = ImageIO.getImageWritersByFormatName(format);
+                if (!readers.hasNext()) {
+                    throw new IOException("No image reader for " + inputPath);
+                }
+                if (!writers.hasNext()) {
+                    throw new IOException("No image writer for format " + format);
+                }
+
+                ImageReader reader = readers.next();
+                ImageWriter writer = writers.next();
+                new File(outputPath).delete();
+                try (ImageOutputStream out = ImageIO.createImageOutputStream(new File(outputPath))) {
+                    reader.setInput(in, true, true);
+                    writer.setOutput(out);
+                    int width = reader.getWidth(0);
+                    int height = reader.getHeight(0);
+                    if (!writer.canWriteEmpty()) {
+                        throw new IOException("Format " + format + " cannot be written strip by strip; use .tif");
+                    }
+                    writer.prepareWriteEmpty(null,
+                            ImageTypeSpecifier.createFromBufferedImageType(BufferedImage.TYPE_INT_RGB),
+                            width, height, null, null, writer.getDefaultWriteParam());
+                    if (!writer.canReplacePixels(0)) {
+                        throw new IOException("Format " + format + " cannot be written strip by strip; use .tif");
+                    }
+
+                    blurStrips(reader, writer, width, height, Math.max(1, stripRows));
+                    writer.endWriteEmpty();
+                    long endTime = System.nanoTime();
+                    metrics.record(Metrics.STAGE_IMAGE, endTime - startTime);
+                    metrics.increment(Metrics.IMAGES_PROCESSED);
+                    return new ProcessingResult(List.of(), List.of(new File(outputPath).getAbsolutePath()),
+                            (long) width * height, 0, endTime - startTime);
+                } finally {
+                    reader.dispose();
+                    writer.dispose();
+                }
+            }
+        }
+
+        private void blurStrips(ImageReader reader, ImageWriter writer, int width, int height, int stripRows)
+                throws IOException {
+            int halo = filter.getRadius();
+            int capacity = stripRows + 2 * halo;
+            int[] buffer = new int[width * capacity];
+            BufferedImage strip = new BufferedImage(width, stripRows, BufferedImage.TYPE_INT_RGB);
+            int[] stripPixels = GaussianBlur.rgbPixels(strip);
+
+            // buffer holds input rows [bufferTop, bufferBottom)
+            int bufferTop = 0;
+            int bufferBottom = 0;
+            for (int outTop = 0; outTop < height; outTop += stripRows) {
+                int outBottom = Math.min(height, outTop + stripRows);
+                int needTop = Math.max(0, outTop - halo);
+                int needBottom = Math.min(height, outBottom + halo);
+
+                // Slide the rows still needed to the front and decode only the new ones
+                int keepFrom = Math.max(bufferTop, needTop);
+                int kept = Math.max(0, bufferBottom - keepFrom);
+                System.arraycopy(buffer, (keepFrom - bufferTop) * width, buffer, 0, kept * width);
+                bufferTop = needTop;
+                bufferBottom = needTop + kept;
+                if (bufferBottom < needBottom) {
+                    ImageReadParam param = reader.getDefaultReadParam();
+                    param.setSourceRegion(new Rectangle(0, bufferBottom, width, needBottom - bufferBottom));
+                    long decodeStart = System.nanoTime();
+                    int[] rows = GaussianBlur.rgbPixels(reader.read(0, param));
+                    metrics.record(Metrics.STAGE_DECODE, System.nanoTime() - decodeStart);
+                    System.arraycopy(rows, 0, buffer, (bufferBottom - bufferTop) * width, rows.length);
+                    bufferBottom = needBottom;
+                }
+
+                // The box engine clamps to the array bounds, so the strip must end where its rows do
+                int rowCount = bufferBottom - bufferTop;
+                int[] src = rowCount == capacity ? buffer : Arrays.copyOf(buffer, rowCount * width);
+                long blurStart = System.nanoTime();
+                filter.filterParallel(new Filter.Buffer(src, 0, bufferTop, width, rowCount),
+                        new Filter.Buffer(stripPixels, 0, outTop, width, stripRows),
+                        0, outTop, width, outBottom, width, height, pool);
+                metrics.record(Metrics.STAGE_BLUR, System.nanoTime() - blurStart);
+                metrics.add(Metrics.PIXELS_PROCESSED, (long) width * (outBottom - outTop));
+
+                long encodeStart = System.nanoTime();
+                writer.prepareReplacePixels(0, new Rectangle(0, outTop, width, outBottom - outTop));
+                ImageWriteParam param = writer.getDefaultWriteParam();
+                param.setDestinationOffset(new Point(0, outTop));
+                writer.replacePixels(strip.getRaster().createChild(0, 0, width, outBottom - outTop, 0, 0, null), param);
+                writer.endReplacePixels();
+                metrics.record(Metrics.STAGE_ENCODE, System.nanoTime() - encodeStart);
+            }
+        }
+
+        /**
+         * Whole-image parallelism while other images are still waiting for a worker, intra-image
+         * tiling once the queue can no longer keep every worker busy (or the image is huge).
+         * Tiles are forked into the same pool, so idle workers steal them and the number of
+         * running compute threads stays within threadCount either way. The decoded input is
+         * recycled afterwards; a pooled output must be recycled by the caller once written.
+         */
+        private BufferedImage blurScheduled(BufferedImage image, int imagesWaiting, boolean pooledOutput) {
+            return blurScheduled(image, imagesWaiting, pooledOutput, filter);
+        }
+
+        private BufferedImage blurScheduled(BufferedImage image, int imagesWaiting, boolean pooledOutput,
+                                            Filter imageFilter) {
+            long start = System.nanoTime();
+            long pixels = (long) image.getWidth() * image.getHeight();
+            BufferedImage output = newOutput(image, pooledOutput);
+            BufferedImage blurred = imagesWaiting >= threadCount - 1 && pixels < LARGE_IMAGE_PIXELS
+                    ? imageFilter.applySequential(image, output)
+                    : imageFilter.applyParallel(image, output, pool);
+            metrics.record(Metrics.STAGE_BLUR, System.nanoTime() - start);
+            recycle(image);
+            return blurred;
+        }
+
+        private BufferedImage blurSequential(BufferedImage image, boolean pooledOutput) {
+            long start = System.nanoTime();
+            BufferedImage blurred = filter.applySequential(image, newOutput(image, pooledOutput));
+            metrics.record(Metrics.STAGE_BLUR, System.nanoTime() - start);
+            recycle(image);
+            return blurred;
         }
 
         public void shutdown() {
-            executor.shutdown();
+            pool.shutdown();
+            metrics.stopGcPauseTracking();
+            metrics.unregister();
         }
     }
 
     public static class ProcessingResult {
         private final List<BufferedImage> images;
+        private final List<String> outputPaths;
+        private final long pixelsProcessed;
+        private final int failureCount;
         private final long processingTimeNanos;
+        private final int cacheHits;
+        private final int cacheMisses;
 
         public ProcessingResult(List<BufferedImage> images, long timeNanos) {
+            this(images, List.of(), images.stream().mapToLong(i -> (long) i.getWidth() * i.getHeight()).sum(),
+                    0, timeNanos);
+        }
+
+        /**
+         * Streaming runs leave images empty and report where each blurred image was written instead.
+         */
+        public ProcessingResult(List<BufferedImage> images, List<String> outputPaths, long pixelsProcessed,
+                                int failureCount, long timeNanos) {
+            this(images, outputPaths, pixelsProcessed, failureCount, timeNanos, 0, 0);
+        }
+
+        public ProcessingResult(List<BufferedImage> images, List<String> outputPaths, long pixelsProcessed,
+                                int failureCount, long timeNanos, int cacheHits, int cacheMisses) {
             this.images = images;
+            this.outputPaths = outputPaths;
+            this.pixelsProcessed = pixelsProcessed;
+            this.failureCount = failureCount;
             this.processingTimeNanos = timeNanos;
+            this.cacheHits = cacheHits;
+            this.cacheMisses = cacheMisses;
         }
 
         public double getProcessingTimeSeconds() {
@@ -282,6 +1627,35 @@ public class MainApp {
             return images;
         }
 
+        public List<String> getOutputPaths() {
+            return outputPaths;
+        }
+
+        public int getImageCount() {
+            return images.isEmpty() ? outputPaths.size() : images.size();
+        }
+
+        public int getFailureCount() {
+            return failureCount;
+        }
+
+        public int getCacheHits() {
+            return cacheHits;
+        }
+
+        public int getCacheMisses() {
+            return cacheMisses;
+        }
+
+        public long getPixelsProcessed() {
+            return pixelsProcessed;
+        }
+
+        public double getMegapixelsPerSecond() {
+            double seconds = getProcessingTimeSeconds();
+            return seconds > 0 ? pixelsProcessed / 1e6 / seconds : 0;
+        }
+
         public long getProcessingTimeNanos() {
             return processingTimeNanos;
         }
@@ -336,7 +1710,7 @@ public class MainApp {
             }
 
             try {
-                ImageIO.write(image, "jpg", new File(directory + "/test_" + i + ".jpg"));
+                ImageCodec.write(image, "jpg", new File(directory + "/test_" + i + ".jpg"));
             } catch (IOException e) {
                 System.err.println("Error creating test image: " + e.getMessage());
             }
@@ -345,7 +1719,92 @@ public class MainApp {
         System.out.println("Created " + count + " test images in " + directory);
     }
 
-    public static void main(String[] args) {
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length >= 3 && args[0].equals("--watch")) {
+            // --watch <inputDir> <outputDir> [sigma] [threadCount]
+            float sigma = args.length > 3 ? Float.parseFloat(args[3]) : 2.0f;
+            int threads = args.length > 4 ? Integer.parseInt(args[4]) : Runtime.getRuntime().availableProcessors();
+            Processor processor = new Processor(sigma, threads, GaussianBlur.Engine.SEPARABLE);
+            try {
+                FolderWatcher watcher = new FolderWatcher(Path.of(args[1]), Path.of(args[2]), processor, 500);
+                Thread mainThread = Thread.currentThread();
+                // Interrupting run() lets the finally below close the watcher; wait so the JVM
+                // does not exit halfway through
+                Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                    mainThread.interrupt();
+                    try {
+                        mainThread.join();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }));
+                try {
+                    System.out.println("Watching " + args[1] + " -> " + args[2]);
+                    watcher.run();
+                } catch (InterruptedException e) {
+                    System.out.println("Stopping watcher");
+                } finally {
+                    watcher.close();
+                }
+            } finally {
+                processor.shutdown();
+            }
+            return;
+        }
+        if (args.length >= 2 && args[0].equals("--serve")) {
+            // --serve <port> [threadCount]
+            int threads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+            BlurServer server = new BlurServer(Integer.parseInt(args[1]), threads);
+            Runtime.getRuntime().addShutdownHook(new Thread(server::close));
+            server.start();
+            System.out.println("Serving on http://localhost:" + server.getPort() + "/blur");
+            return;
+        }
+
+        if (args.length >= 3 && args[0].equals("--shard")) {
+            // --shard <inputDir> <outputDir> [workers] [sigma]: one batch across worker JVMs
+            int workers = args.length > 3 ? Integer.parseInt(args[3]) : 2;
+            float sigma = args.length > 4 ? Float.parseFloat(args[4]) : 2.0f;
+            int threads = Math.max(1, Runtime.getRuntime().availableProcessors() / workers);
+            List<String> paths = new ArrayList<>();
+            try (Stream<Path> files = Files.list(Path.of(args[1]))) {
+                files.filter(FolderWatcher::isImage).sorted().forEach(f -> paths.add(f.toString()));
+            }
+            BatchCoordinator coordinator = new BatchCoordinator(workers, threads, sigma, GaussianBlur.Engine.SEPARABLE);
+            ProcessingResult result = coordinator.run(paths, args[2]);
+            System.out.print(coordinator.getReport());
+            System.out.printf("%d images, %d failed, %.2f s, %.2f MPix/s%n", result.getImageCount(),
+                    result.getFailureCount(), result.getProcessingTimeSeconds(), result.getMegapixelsPerSecond());
+            return;
+        }
+        if (args.length >= 1 && args[0].equals("--tune")) {
+            // --tune [threadCount] [sigma,sigma,...]: calibrates every engine but DIRECT (see TileTuner)
+            // and saves the tiling profile
+            int threads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+            String[] sigmas = (args.length > 2 ? args[2] : "2,8").split(",");
+            ForkJoinPool tunePool = Processor.newComputePool(threads);
+            TileTuner.Profile profile = TileTuner.profile();
+            try {
+                for (GaussianBlur.Engine engine : GaussianBlur.Engine.values()) {
+                    if (engine == GaussianBlur.Engine.DIRECT
+                            || engine == GaussianBlur.Engine.VECTOR && !GaussianBlur.isVectorEngineAvailable()) {
+                        continue;
+                    }
+                    for (String sigma : sigmas) {
+                        GaussianBlur blur = new GaussianBlur(Float.parseFloat(sigma), engine);
+                        TileTuner.Tiling tiling = TileTuner.calibrate(blur, tunePool, 2000);
+                        profile.put(engine, 2 * blur.getKernelRadius() + 1, threads, tiling);
+                        System.out.println(engine + " sigma " + sigma + " on " + threads + " threads: " + tiling);
+                    }
+                }
+            } finally {
+                tunePool.shutdown();
+            }
+            profile.save();
+            System.out.println("Saved " + profile.getFile());
+            return;
+        }
+
         String testDir = "test_images";
         if (!new File(testDir).exists()) {
             System.out.println("Creating test images...");
@@ -0,0 +1,359 @@
+package final_project;
+
+import com.sun.management.GarbageCollectionNotificationInfo;
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.DoubleSupplier;
+import javax.management.JMException;
+import javax.management.ListenerNotFoundException;
+import javax.management.MBeanServer;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+
+/**
+ * Lock-free run metrics for Processor and GaussianBlur: counters, per-stage latency histograms
+ * (p50/p95/p99/max), sampled gauges such as queue depths and pool utilization, and JVM
+ * allocation and GC totals. A snapshot can be exported as JSON or CSV, and the same numbers are
+ * readable live over JMX once register() has been called.
+ */
+public class Metrics implements MetricsMXBean {
+
+    /** Counter names shared by Processor and GaussianBlur. */
+    public static final String IMAGES_PROCESSED = "images.processed";
+    public static final String IMAGES_FAILED = "images.failed";
+    public static final String PIXELS_PROCESSED = "pixels.processed";
+    public static final String TILES_CONVOLVED = "tiles.convolved";
+
+    /** Stage (histogram) names. */
+    public static final String STAGE_DECODE = "decode";
+    public static final String STAGE_BLUR = "blur";
+    public static final String STAGE_ENCODE = "encode";
+    public static final String STAGE_IMAGE = "image";
+    public static final String STAGE_CONVOLVE = "convolve";
+    /** Collector pauses seen while startGcPauseTracking() is on. */
+    public static final String STAGE_GC_PAUSE = "gc.pause";
+
+    private static final AtomicLong REGISTRATIONS = new AtomicLong();
+
+    // Last allocated-bytes reading per live thread, and the final readings of exited threads
+    private static Map<Long, Long> lastAllocatedBytes = new HashMap<>();
+    private static long exitedThreadsAllocatedBytes;
+
+    private final Map<String, AtomicLong> counters = new ConcurrentHashMap<>();
+    private final Map<String, LatencyHistogram> histograms = new ConcurrentHashMap<>();
+    private final Map<String, DoubleSupplier> gauges = new ConcurrentHashMap<>();
+    private volatile long startNanos = System.nanoTime();
+    private ObjectName registeredName;
+    private NotificationListener gcListener;
+
+    public void increment(String counter) {
+        add(counter, 1);
+    }
+
+    public void add(String counter, long delta) {
+        counters.computeIfAbsent(counter, k -> new AtomicLong()).addAndGet(delta);
+    }
+
+    public long count(String counter) {
+        AtomicLong value = counters.get(counter);
+        return value == null ? 0 : value.get();
+    }
+
+    public void record(String stage, long nanos) {
+        histogram(stage).record(nanos);
+    }
+
+    public LatencyHistogram histogram(String stage) {
+        return histograms.computeIfAbsent(stage, k -> new LatencyHistogram());
+    }
+
+    /** Registers (or replaces) a gauge that is sampled whenever a snapshot is taken. */
+    public void gauge(String name, DoubleSupplier supplier) {
+        gauges.put(name, supplier);
+    }
+
+    public void removeGauge(String name) {
+        gauges.remove(name);
+    }
+
+    @Override
+    public long getImagesProcessed() {
+        return count(IMAGES_PROCESSED);
+    }
+
+    @Override
+    public long getImagesFailed() {
+        return count(IMAGES_FAILED);
+    }
+
+    /** Time since creation or the last reset(). */
+    public long getElapsedNanos() {
+        return System.nanoTime() - startNanos;
+    }
+
+    @Override
+    public double getMegapixelsPerSecond() {
+        double seconds = getElapsedNanos() / 1e9;
+        return seconds > 0 ? count(PIXELS_PROCESSED) / 1e6 / seconds : 0;
+    }
+
+    /** Flat name -> value view of everything: counters, histogram summaries (ms), gauges, JVM totals. */
+    @Override
+    public Map<String, Double> getSnapshot() {
+        Map<String, Double> snapshot = new TreeMap<>();
+        counters.forEach((name, value) -> snapshot.put(name, (double) value.get()));
+        histograms.forEach((name, histogram) -> {
+            snapshot.put(name + ".count", (double) histogram.getCount());
+            snapshot.put(name + ".meanMs", histogram.getMean() / 1e6);
+            snapshot.put(name + ".p50Ms", histogram.getPercentile(50) / 1e6);
+            snapshot.put(name + ".p95Ms", histogram.getPercentile(95) / 1e6);
+            snapshot.put(name + ".p99Ms", histogram.getPercentile(99) / 1e6);
+            snapshot.put(name + ".maxMs", histogram.getMax() / 1e6);
+        });
+        gauges.forEach((name, gauge) -> snapshot.put(name, gauge.getAsDouble()));
+        snapshot.put("megapixelsPerSecond", getMegapixelsPerSecond());
+        snapshot.put("elapsedSeconds", getElapsedNanos() / 1e9);
+        snapshot.put("jvm.allocatedBytes", (double) totalAllocatedBytes());
+        snapshot.put("jvm.heapUsedBytes", (double) ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed());
+        long gcCount = 0;
+        long gcMillis = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            gcCount += Math.max(0, gc.getCollectionCount());
+            gcMillis += Math.max(0, gc.getCollectionTime());
+        }
+        snapshot.put("jvm.gcCount", (double) gcCount);
+        snapshot.put("jvm.gcMillis", (double) gcMillis);
+        return snapshot;
+    }
+
+    @Override
+    public String getJson() {
+        StringBuilder json = new StringBuilder("{");
+        for (Map.Entry<String, Double> entry : getSnapshot().entrySet()) {
+            if (json.length() > 1) {
+                json.append(',');
+            }
+            double value = entry.getValue();
+            json.append('"').append(entry.getKey()).append("\":")
+                    .append(Double.isFinite(value) ? format(value) : "null");
+        }
+        return json.append('}').toString();
+    }
+
+    public String getCsv() {
+        StringBuilder csv = new StringBuilder("metric,value\n");
+        for (Map.Entry<String, Double> entry : getSnapshot().entrySet()) {
+            csv.append(entry.getKey()).append(',').append(format(entry.getValue())).append('\n');
+        }
+        return csv.toString();
+    }
+
+    // Counters print as whole numbers, everything else with six significant digits
+    private static String format(double value) {
+        if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+            return Long.toString((long) value);
+        }
+        return String.format(Locale.ROOT, "%.6g", value);
+    }
+
+    public void writeJson(Path file) throws IOException {
+        Files.writeString(file, getJson());
+    }
+
+    public void writeCsv(Path file) throws IOException {
+        Files.writeString(file, getCsv());
+    }
+
+    @Override
+    public void reset() {
+        counters.clear();
+        histograms.clear();
+        startNanos = System.nanoTime();
+    }
+
+    /** Publishes this instance on the platform MBean server as final_project:type=Metrics,name=... */
+    public synchronized void register(String name) {
+        if (registeredName != null) {
+            return;
+        }
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            registeredName = new ObjectName("final_project:type=Metrics,name="
+                    + ObjectName.quote(name + "-" + REGISTRATIONS.incrementAndGet()));
+            server.registerMBean(this, registeredName);
+        } catch (JMException e) {
+            registeredName = null;
+            System.err.println("Could not register metrics MBean: " + e.getMessage());
+        }
+    }
+
+    public synchronized void unregister() {
+        if (registeredName == null) {
+            return;
+        }
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(registeredName);
+        } catch (JMException e) {
+            System.err.println("Could not unregister metrics MBean: " + e.getMessage());
+        }
+        registeredName = null;
+    }
+
+    /**
+     * Records the duration of every garbage collection from now on in the STAGE_GC_PAUSE
+     * histogram, so pause percentiles show up next to the stage latencies. Cycles of the
+     * concurrent collectors (ZGC, Shenandoah) are skipped: they run beside the application and
+     * their short pauses are reported separately.
+     */
+    public synchronized void startGcPauseTracking() {
+        if (gcListener != null) {
+            return;
+        }
+        gcListener = (notification, handback) -> {
+            if (!notification.getType().equals(GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION)) {
+                return;
+            }
+            GarbageCollectionNotificationInfo info =
+                    GarbageCollectionNotificationInfo.from((CompositeData) notification.getUserData());
+            if (!info.getGcName().endsWith("Cycles")) {
+                record(STAGE_GC_PAUSE, info.getGcInfo().getDuration() * 1_000_000L);
+            }
+        };
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            if (gc instanceof NotificationEmitter) {
+                ((NotificationEmitter) gc).addNotificationListener(gcListener, null, null);
+            }
+        }
+    }
+
+    public synchronized void stopGcPauseTracking() {
+        if (gcListener == null) {
+            return;
+        }
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            if (gc instanceof NotificationEmitter) {
+                try {
+                    ((NotificationEmitter) gc).removeNotificationListener(gcListener);
+                } catch (ListenerNotFoundException e) {
+                    // Not registered on this collector
+                }
+            }
+        }
+        gcListener = null;
+    }
+
+    /**
+     * Bytes allocated by all threads so far, pool workers included; -1 when the JVM cannot report
+     * it. The JVM only reports live threads, so each thread's last reading is remembered and
+     * kept in the total once the thread has exited: the total never goes down. Allocations a
+     * thread made after the previous call and before exiting are missed, so call this regularly
+     * (every snapshot does) when threads come and go.
+     */
+    static synchronized long totalAllocatedBytes() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (!(threads instanceof com.sun.management.ThreadMXBean)) {
+            return -1;
+        }
+        long[] ids = threads.getAllThreadIds();
+        long[] allocated = ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(ids);
+        Map<Long, Long> live = new HashMap<>();
+        long total = 0;
+        for (int i = 0; i < ids.length; i++) {
+            if (allocated[i] > 0) {
+                live.put(ids[i], allocated[i]);
+                total += allocated[i];
+            }
+        }
+        for (Map.Entry<Long, Long> seen : lastAllocatedBytes.entrySet()) {
+            if (!live.containsKey(seen.getKey())) {
+                exitedThreadsAllocatedBytes += seen.getValue();
+            }
+        }
+        lastAllocatedBytes = live;
+        return exitedThreadsAllocatedBytes + total;
+    }
+
+    /**
+     * Log-linear latency histogram: each power of two of nanoseconds is split into 16 buckets,
+     * so percentiles are exact to within about 6% with constant memory and lock-free recording.
+     */
+    public static class LatencyHistogram {
+        private static final int SUB_BUCKET_BITS = 4;
+        private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+        private final AtomicLongArray buckets = new AtomicLongArray(64 * SUB_BUCKETS);
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicLong sum = new AtomicLong();
+        private final AtomicLong max = new AtomicLong();
+
+        public void record(long nanos) {
+            long value = Math.max(1, nanos);
+            buckets.incrementAndGet(indexOf(value));
+            count.incrementAndGet();
+            sum.addAndGet(value);
+            max.accumulateAndGet(value, Math::max);
+        }
+
+        private static int indexOf(long value) {
+            int exponent = 63 - Long.numberOfLeadingZeros(value);
+            if (exponent < SUB_BUCKET_BITS) {
+                return (int) value;
+            }
+            int sub = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+            return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + sub;
+        }
+
+        private static long lowerBoundOf(int index) {
+            if (index < SUB_BUCKETS) {
+                return index;
+            }
+            int exponent = index / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+            int sub = index % SUB_BUCKETS;
+            return (1L << exponent) + ((long) sub << (exponent - SUB_BUCKET_BITS));
+        }
+
+        public long getCount() {
+            return count.get();
+        }
+
+        public double getMean() {
+            long n = count.get();
+            return n == 0 ? 0 : (double) sum.get() / n;
+        }
+
+        public long getTotal() {
+            return sum.get();
+        }
+
+        public long getMax() {
+            return max.get();
+        }
+
+        /** Lower bound of the bucket holding the given percentile, in nanoseconds. */
+        public long getPercentile(double percentile) {
+            long n = count.get();
+            if (n == 0) {
+                return 0;
+            }
+            long rank = Math.max(1, (long) Math.ceil(percentile / 100.0 * n));
+            long seen = 0;
+            for (int i = 0; i < buckets.length(); i++) {
+                seen += buckets.get(i);
+                if (seen >= rank) {
+                    return Math.min(lowerBoundOf(i), max.get());
+                }
+            }
+            return max.get();
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package final_project;
+
+import java.util.Map;
+
+/**
+ * JMX view of a Metrics instance; attributes are sampled live on every read.
+ */
+public interface MetricsMXBean {
+    long getImagesProcessed();
+
+    long getImagesFailed();
+
+    double getMegapixelsPerSecond();
+
+    Map<String, Double> getSnapshot();
+
+    String getJson();
+
+    void reset();
+}
@@ -0,0 +1,205 @@
+package final_project;
+
+import java.awt.image.BufferedImage;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+
+/**
+ * PlanarImage on java.lang.foreign: each channel plane is a MemorySegment of width * height
+ * bytes allocated in a shared Arena (any ForkJoin worker may read or write it), and close()
+ * closes the arena, freeing all three planes at once. Rows move between the planes and heap
+ * arrays with bulk MemorySegment.copy calls, so the loops only ever index small row-sized
+ * buffers and the planes are read and written as long sequential runs.
+ *
+ * PlanarImage only loads this class reflectively, so it is compiled separately from the rest:
+ * javac --release 22, or --release 21 --enable-preview for Java 21.
+ */
+final class OffHeapPlanarImage extends PlanarImage {
+
+    private static final int RED = 0;
+    private static final int GREEN = 1;
+    private static final int BLUE = 2;
+
+    private final Arena arena;
+    private final MemorySegment[] planes = new MemorySegment[3];
+
+    OffHeapPlanarImage(int width, int height) {
+        super(width, height);
+        arena = Arena.ofShared();
+        try {
+            long size = (long) width * height;
+            for (int c = 0; c < planes.length; c++) {
+                planes[c] = arena.allocate(size, 64);
+            }
+        } catch (RuntimeException | Error e) {
+            arena.close();
+            throw e;
+        }
+    }
+
+    @Override
+    public void write(BufferedImage band, int y) {
+        checkBand(band, y);
+        int width = getWidth();
+        int[] pixels = MainApp.GaussianBlur.rgbPixels(band);
+        byte[][] rows = new byte[3][width];
+        for (int row = 0; row < band.getHeight(); row++) {
+            int base = row * width;
+            for (int x = 0; x < width; x++) {
+                int pixel = pixels[base + x];
+                rows[RED][x] = (byte) (pixel >> 16);
+                rows[GREEN][x] = (byte) (pixel >> 8);
+                rows[BLUE][x] = (byte) pixel;
+            }
+            long offset = (long) (y + row) * width;
+            for (int c = 0; c < planes.length; c++) {
+                MemorySegment.copy(rows[c], 0, planes[c], ValueLayout.JAVA_BYTE, offset, width);
+            }
+        }
+    }
+
+    @Override
+    public void read(int y, BufferedImage band) {
+        checkBand(band, y);
+        int width = getWidth();
+        byte[][] rows = new byte[3][width];
+        int[] pixels = new int[width];
+        boolean packed = band.getType() == BufferedImage.TYPE_INT_RGB;
+        for (int row = 0; row < band.getHeight(); row++) {
+            long offset = (long) (y + row) * width;
+            for (int c = 0; c < planes.length; c++) {
+                MemorySegment.copy(planes[c], ValueLayout.JAVA_BYTE, offset, rows[c], 0, width);
+            }
+            for (int x = 0; x < width; x++) {
+                pixels[x] = (rows[RED][x] & 0xFF) << 16 | (rows[GREEN][x] & 0xFF) << 8 | (rows[BLUE][x] & 0xFF);
+            }
+            if (packed) {
+                band.getRaster().setDataElements(0, row, width, 1, pixels);
+            } else {
+                band.setRGB(0, row, width, 1, pixels, 0, width);
+            }
+        }
+    }
+
+    @Override
+    void readBlock(int x, int y, int width, int height, int[] pixels) {
+        byte[][] rows = new byte[3][width];
+        for (int row = 0; row < height; row++) {
+            long offset = (long) (y + row) * getWidth() + x;
+            for (int c = 0; c < planes.length; c++) {
+                MemorySegment.copy(planes[c], ValueLayout.JAVA_BYTE, offset, rows[c], 0, width);
+            }
+            for (int i = 0, idx = row * width; i < width; i++, idx++) {
+                pixels[idx] = (rows[RED][i] & 0xFF) << 16 | (rows[GREEN][i] & 0xFF) << 8 | (rows[BLUE][i] & 0xFF);
+            }
+        }
+    }
+
+    @Override
+    void writeBlock(int x, int y, int width, int height, int[] pixels) {
+        byte[][] rows = new byte[3][width];
+        for (int row = 0; row < height; row++) {
+            for (int i = 0, idx = row * width; i < width; i++, idx++) {
+                int pixel = pixels[idx];
+                rows[RED][i] = (byte) (pixel >> 16);
+                rows[GREEN][i] = (byte) (pixel >> 8);
+                rows[BLUE][i] = (byte) pixel;
+            }
+            long offset = (long) (y + row) * getWidth() + x;
+            for (int c = 0; c < planes.length; c++) {
+                MemorySegment.copy(rows[c], 0, planes[c], ValueLayout.JAVA_BYTE, offset, width);
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        arena.close();
+    }
+
+    /**
+     * Same arithmetic as GaussianBlur.convolveSeparable, one plane at a time: each source row of
+     * the window plus its halo is copied out of the plane and run through the horizontal pass
+     * into a float plane, then the vertical pass packs all three channels per pixel (so post sees
+     * whole pixels) and the finished row is copied into dst.
+     */
+    @Override
+    void convolve(PlanarImage dst, float[] kernel1D, int x0, int y0, int x1, int y1, PointFilter post) {
+        if (x0 >= x1 || y0 >= y1) {
+            return;
+        }
+        MemorySegment[] out = ((OffHeapPlanarImage) dst).planes;
+        int width = getWidth();
+        int kernelSize = kernel1D.length;
+        int offset = kernelSize / 2;
+        int cols = x1 - x0;
+        int rows = (y1 - y0) + 2 * offset;
+        int span = cols + 2 * offset;
+
+        byte[] line = new byte[span];
+        float[][] horizontal = new float[3][cols * rows];
+        for (int c = 0; c < planes.length; c++) {
+            float[] plane = horizontal[c];
+            for (int row = 0; row < rows; row++) {
+                long start = (long) (y0 - offset + row) * width + (x0 - offset);
+                MemorySegment.copy(planes[c], ValueLayout.JAVA_BYTE, start, line, 0, span);
+                for (int x = 0, idx = row * cols; x < cols; x++, idx++) {
+                    float sum = 0;
+                    for (int k = 0; k < kernelSize; k++) {
+                        sum += (line[x + k] & 0xFF) * kernel1D[k];
+                    }
+                    plane[idx] = sum;
+                }
+            }
+        }
+
+        byte[][] result = new byte[3][cols];
+        for (int y = y0; y < y1; y++) {
+            int base = (y - y0) * cols;
+            for (int x = 0; x < cols; x++, base++) {
+                float r = 0, g = 0, b = 0;
+                for (int k = 0, idx = base; k < kernelSize; k++, idx += cols) {
+                    float weight = kernel1D[k];
+                    r += horizontal[RED][idx] * weight;
+                    g += horizontal[GREEN][idx] * weight;
+                    b += horizontal[BLUE][idx] * weight;
+                }
+                int rgb = MainApp.GaussianBlur.packRgb(r, g, b);
+                if (post != null) {
+                    rgb = post.apply(rgb);
+                }
+                result[RED][x] = (byte) (rgb >> 16);
+                result[GREEN][x] = (byte) (rgb >> 8);
+                result[BLUE][x] = (byte) rgb;
+            }
+            long start = (long) y * width + x0;
+            for (int c = 0; c < out.length; c++) {
+                MemorySegment.copy(result[c], 0, out[c], ValueLayout.JAVA_BYTE, start, cols);
+            }
+        }
+    }
+
+    @Override
+    void fillOutside(int x0, int y0, int x1, int y1, int rgb) {
+        int width = getWidth();
+        int height = getHeight();
+        byte[] values = {(byte) (rgb >> 16), (byte) (rgb >> 8), (byte) rgb};
+        for (int c = 0; c < planes.length; c++) {
+            MemorySegment plane = planes[c];
+            byte value = values[c];
+            if (x0 >= x1 || y0 >= y1) {
+                plane.fill(value);
+                continue;
+            }
+            // Full rows above and below, then the left and right runs of the rows in between
+            plane.asSlice(0, (long) y0 * width).fill(value);
+            plane.asSlice((long) y1 * width, (long) (height - y1) * width).fill(value);
+            for (int y = y0; y < y1; y++) {
+                long row = (long) y * width;
+                plane.asSlice(row, x0).fill(value);
+                plane.asSlice(row + x1, width - x1).fill(value);
+            }
+        }
+    }
+}
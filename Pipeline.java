@@ -0,0 +1,129 @@
+package final_project;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A chain of filters that touches each pixel in cache once rather than once per filter.
+ *
+ * Two things keep a chain from costing a full pass and a full-size intermediate image per filter:
+ * - Point-wise filters are fused into the filter before them (Filter.fuse), so a chain such as
+ *   blur, grayscale, brightness/contrast runs as a single convolution pass whose pixels are
+ *   transformed as they are packed.
+ * - The remaining stages run tile by tile. For each output tile, every stage computes just the
+ *   region the next stage reads (the tile grown by the later stages' radii) into a tile-sized
+ *   scratch buffer, so intermediate results never leave the cache. The price is that the halos
+ *   of neighbouring tiles are computed twice, which is small next to the tile for radii well
+ *   below Filter.TILE_SIZE.
+ *
+ * Output is identical to applying the filters one after another over whole images.
+ */
+public class Pipeline implements Filter {
+
+    // As given (nested pipelines flattened), for parameters and further chaining
+    private final List<Filter> filters;
+    // After fusion; what actually runs
+    private final Filter[] stages;
+    private final int radius;
+    private volatile BufferPool buffers;
+
+    public Pipeline(Filter... filters) {
+        if (filters.length == 0) {
+            throw new IllegalArgumentException("A pipeline needs at least one filter");
+        }
+        List<Filter> flat = new ArrayList<>();
+        for (Filter filter : filters) {
+            if (filter instanceof Pipeline) {
+                flat.addAll(((Pipeline) filter).filters);
+            } else {
+                flat.add(filter);
+            }
+        }
+        this.filters = List.copyOf(flat);
+
+        List<Filter> compiled = new ArrayList<>();
+        for (Filter filter : flat) {
+            if (filter instanceof PointFilter && !compiled.isEmpty()) {
+                Filter fused = compiled.get(compiled.size() - 1).fuse((PointFilter) filter);
+                if (fused != null) {
+                    compiled.set(compiled.size() - 1, fused);
+                    continue;
+                }
+            }
+            compiled.add(filter);
+        }
+        this.stages = compiled.toArray(new Filter[0]);
+        this.radius = compiled.stream().mapToInt(Filter::getRadius).sum();
+    }
+
+    /** Passes that actually run per tile once point-wise filters have been fused. */
+    public int getStageCount() {
+        return stages.length;
+    }
+
+    @Override
+    public int getRadius() {
+        return radius;
+    }
+
+    @Override
+    public void filter(Buffer src, Buffer dst, int x0, int y0, int x1, int y1, int imageWidth, int imageHeight) {
+        // Output region of each stage, from the last one (the window) backwards
+        int n = stages.length;
+        int[][] regions = new int[n][];
+        regions[n - 1] = new int[]{x0, y0, x1, y1};
+        for (int k = n - 1; k > 0; k--) {
+            int r = stages[k].getRadius();
+            int[] next = regions[k];
+            regions[k - 1] = new int[]{Math.max(0, next[0] - r), Math.max(0, next[1] - r),
+                    Math.min(imageWidth, next[2] + r), Math.min(imageHeight, next[3] + r)};
+        }
+
+        BufferPool pool = buffers;
+        Buffer in = src;
+        for (int k = 0; k < n; k++) {
+            int[] region = regions[k];
+            Buffer out = k == n - 1 ? dst : Buffer.allocate(pool, region[0], region[1], region[2], region[3]);
+            stages[k].filter(in, out, region[0], region[1], region[2], region[3], imageWidth, imageHeight);
+            if (in != src) {
+                in.recycle(pool);
+            }
+            in = out;
+        }
+    }
+
+    @Override
+    public String getParameters() {
+        StringBuilder parameters = new StringBuilder();
+        for (Filter filter : filters) {
+            if (parameters.length() > 0) {
+                parameters.append('>');
+            }
+            parameters.append(filter.getParameters());
+        }
+        return parameters.toString();
+    }
+
+    @Override
+    public Filter fuse(PointFilter next) {
+        Pipeline fused = new Pipeline(this, next);
+        fused.buffers = buffers;
+        return fused;
+    }
+
+    @Override
+    public void setMetrics(Metrics metrics) {
+        for (Filter stage : stages) {
+            stage.setMetrics(metrics);
+        }
+    }
+
+    /** Intermediate tiles are leased from the pool too, so a warm pipeline allocates no scratch. */
+    @Override
+    public void setBufferPool(BufferPool buffers) {
+        this.buffers = buffers;
+        for (Filter stage : stages) {
+            stage.setBufferPool(buffers);
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package final_project;
+
+import java.awt.image.BufferedImage;
+import java.lang.reflect.Constructor;
+
+/**
+ * An RGB image held as three separate 8-bit planes (all the reds, then all the greens, then all
+ * the blues, each row-major) outside the Java heap. A pixel costs 3 bytes instead of a 4 byte
+ * int, the heap and the garbage collector never see the pixels, and indices are long, so an
+ * image is not limited to 2^31 pixels the way an int[] raster is. GaussianBlur.applyPlanar blurs
+ * these planes tile by tile with any engine, SEPARABLE directly in the planes.
+ *
+ * The memory lives until close(), not until the object is unreachable: always close a planar
+ * image (try-with-resources), and never touch it afterwards. Images larger than a BufferedImage
+ * can hold are filled and read back a band of rows at a time with write/read.
+ *
+ * The implementation, OffHeapPlanarImage, is built on java.lang.foreign: final in Java 22, a
+ * preview API in 21 (compile it with --release 21 --enable-preview and run with --enable-preview
+ * there). It is loaded reflectively, so everything else still compiles and runs on 17. Where the
+ * class is missing or its class file version is not supported, isAvailable() is false and
+ * allocate throws UnsupportedOperationException.
+ */
+public abstract class PlanarImage implements AutoCloseable {
+
+    // Null when OffHeapPlanarImage was not compiled in or cannot be loaded on this runtime
+    private static final Constructor<? extends PlanarImage> OFF_HEAP = loadOffHeap();
+
+    private final int width;
+    private final int height;
+
+    PlanarImage(int width, int height) {
+        if (width <= 0 || height <= 0) {
+            throw new IllegalArgumentException("Invalid size " + width + "x" + height);
+        }
+        this.width = width;
+        this.height = height;
+    }
+
+    public static boolean isAvailable() {
+        return OFF_HEAP != null;
+    }
+
+    /** An image of the given size with undefined pixels. */
+    public static PlanarImage allocate(int width, int height) {
+        if (OFF_HEAP == null) {
+            throw new UnsupportedOperationException(
+                    "Off-heap planar images need Java 22, or Java 21 with --enable-preview");
+        }
+        try {
+            return OFF_HEAP.newInstance(width, height);
+        } catch (ReflectiveOperationException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /** A planar copy of image. */
+    public static PlanarImage of(BufferedImage image) {
+        PlanarImage planar = allocate(image.getWidth(), image.getHeight());
+        try {
+            planar.write(image, 0);
+        } catch (RuntimeException | Error e) {
+            planar.close();
+            throw e;
+        }
+        return planar;
+    }
+
+    private static Constructor<? extends PlanarImage> loadOffHeap() {
+        // Before 21, or on 21 without --enable-preview, loading fails with UnsupportedClassVersionError
+        try {
+            return Class.forName(PlanarImage.class.getPackageName() + ".OffHeapPlanarImage")
+                    .asSubclass(PlanarImage.class)
+                    .getDeclaredConstructor(int.class, int.class);
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return null;
+        }
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    /** A TYPE_INT_RGB copy of the whole image; it must have fewer than 2^31 pixels. */
+    public BufferedImage toBufferedImage() {
+        if ((long) width * height > Integer.MAX_VALUE) {
+            throw new IllegalStateException("Too large for a BufferedImage: " + width + "x" + height);
+        }
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        read(0, image);
+        return image;
+    }
+
+    /** Copies the rows of band (as wide as this image) into rows y .. y + band height - 1. */
+    public abstract void write(BufferedImage band, int y);
+
+    /** Copies rows y .. y + band height - 1 into band, which must be as wide as this image. */
+    public abstract void read(int y, BufferedImage band);
+
+    /** Frees the planes. */
+    @Override
+    public abstract void close();
+
+    /** Copies the block [x, x + width) x [y, y + height) into pixels, packed 0xRRGGBB and row-major. */
+    abstract void readBlock(int x, int y, int width, int height, int[] pixels);
+
+    /** Stores pixels, packed 0xRRGGBB and row-major, into the block [x, x + width) x [y, y + height). */
+    abstract void writeBlock(int x, int y, int width, int height, int[] pixels);
+
+    /**
+     * Separable convolution of the window [x0, x1) x [y0, y1) of this image into the same
+     * window of dst (same size), with post applied to each packed output pixel when not null.
+     * The caller keeps the window kernel1D.length / 2 away from the edges.
+     */
+    abstract void convolve(PlanarImage dst, float[] kernel1D, int x0, int y0, int x1, int y1, PointFilter post);
+
+    /** Sets every pixel outside [x0, x1) x [y0, y1) to the packed 0xRRGGBB value rgb. */
+    abstract void fillOutside(int x0, int y0, int x1, int y1, int rgb);
+
+    void checkBand(BufferedImage band, int y) {
+        if (band.getWidth() != width || y < 0 || y + band.getHeight() > height) {
+            throw new IllegalArgumentException("A " + band.getWidth() + "x" + band.getHeight()
+                    + " band does not fit at row " + y + " of a " + width + "x" + height + " image");
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package final_project;
+
+import java.util.Locale;
+
+/**
+ * A filter whose output pixel depends only on the input pixel at the same position. Point
+ * filters need no context, compose into a single per-pixel function, and are fused into a
+ * preceding GaussianBlur or UnsharpMask inside a Pipeline, so they never cost a pass of their own
+ * there.
+ */
+public abstract class PointFilter implements Filter {
+
+    /** Maps one packed 0xRRGGBB pixel. */
+    public abstract int apply(int rgb);
+
+    /** Luma (ITU-R BT.601 weights) copied into all three channels. */
+    public static PointFilter grayscale() {
+        return new Grayscale();
+    }
+
+    /**
+     * v' = (v - 128) * contrast + 128 + brightness per channel, rounded and clamped to 0..255.
+     * brightness is in levels (-255..255); contrast 1 leaves the spread unchanged.
+     */
+    public static PointFilter brightnessContrast(float brightness, float contrast) {
+        int[] table = new int[256];
+        for (int v = 0; v < 256; v++) {
+            table[v] = Math.min(255, Math.max(0, Math.round((v - 128) * contrast + 128 + brightness)));
+        }
+        return new ChannelTable(table, String.format(Locale.ROOT, "brightness=%08x|contrast=%08x",
+                Float.floatToIntBits(brightness), Float.floatToIntBits(contrast)));
+    }
+
+    @Override
+    public int getRadius() {
+        return 0;
+    }
+
+    @Override
+    public void filter(Buffer src, Buffer dst, int x0, int y0, int x1, int y1, int imageWidth, int imageHeight) {
+        for (int y = y0; y < y1; y++) {
+            int srcRow = (y - src.y) * src.width - src.x;
+            int dstRow = (y - dst.y) * dst.width - dst.x;
+            for (int x = x0; x < x1; x++) {
+                dst.pixels[dstRow + x] = apply(src.pixels[srcRow + x]);
+            }
+        }
+    }
+
+    /** Point filters compose with each other; per-channel tables collapse into one table. */
+    @Override
+    public PointFilter fuse(PointFilter next) {
+        return new Composite(this, next);
+    }
+
+    private static final class Grayscale extends PointFilter {
+        @Override
+        public int apply(int rgb) {
+            int luma = (int) (0.299f * ((rgb >> 16) & 0xFF) + 0.587f * ((rgb >> 8) & 0xFF)
+                    + 0.114f * (rgb & 0xFF) + 0.5f);
+            return (luma << 16) | (luma << 8) | luma;
+        }
+
+        @Override
+        public String getParameters() {
+            return "grayscale";
+        }
+    }
+
+    // The same 256-entry lookup applied to each channel
+    private static final class ChannelTable extends PointFilter {
+        private final int[] table;
+        private final String parameters;
+
+        ChannelTable(int[] table, String parameters) {
+            this.table = table;
+            this.parameters = parameters;
+        }
+
+        @Override
+        public int apply(int rgb) {
+            return (table[(rgb >> 16) & 0xFF] << 16) | (table[(rgb >> 8) & 0xFF] << 8) | table[rgb & 0xFF];
+        }
+
+        @Override
+        public PointFilter fuse(PointFilter next) {
+            if (!(next instanceof ChannelTable)) {
+                return super.fuse(next);
+            }
+            int[] nextTable = ((ChannelTable) next).table;
+            int[] combined = new int[256];
+            for (int v = 0; v < 256; v++) {
+                combined[v] = nextTable[table[v]];
+            }
+            return new ChannelTable(combined, parameters + ">" + next.getParameters());
+        }
+
+        @Override
+        public String getParameters() {
+            return parameters;
+        }
+    }
+
+    private static final class Composite extends PointFilter {
+        private final PointFilter first;
+        private final PointFilter second;
+
+        Composite(PointFilter first, PointFilter second) {
+            this.first = first;
+            this.second = second;
+        }
+
+        @Override
+        public int apply(int rgb) {
+            return second.apply(first.apply(rgb));
+        }
+
+        @Override
+        public PointFilter fuse(PointFilter next) {
+            // Let a trailing table absorb the next one where it can
+            return new Composite(first, second.fuse(next));
+        }
+
+        @Override
+        public String getParameters() {
+            return first.getParameters() + ">" + second.getParameters();
+        }
+    }
+}
@@ -0,0 +1,185 @@
+package final_project;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.stream.Stream;
+
+/**
+ * Persistent, content-addressed cache of blurred images. Entries are keyed by the SHA-256 of the
+ * input file's bytes plus every filter parameter that affects the output (Filter.getParameters(),
+ * e.g. sigma and engine, and the border handling), so renamed or copied inputs still hit and any
+ * parameter change misses.
+ *
+ * Results are stored losslessly as PNG, one file per key. Files are written to a temporary name
+ * and atomically moved into place, so concurrent workers (or processes) never read a partial
+ * entry. The total size is capped: least recently used entries are evicted first, and hits touch
+ * the file's modification time so the LRU order survives restarts.
+ */
+public class ResultCache {
+
+    // Bump when the blur output changes for the same parameters so old entries stop matching
+    private static final String FORMAT_VERSION = "1";
+    // Pixels closer than the kernel radius to the edge are left black by every engine
+    private static final String BORDER_MODE = "zero-border";
+    private static final String SUFFIX = ".png";
+
+    private final Path directory;
+    private final long maxBytes;
+    private final LinkedHashMap<String, Long> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long totalBytes;
+    private long hits;
+    private long misses;
+
+    public ResultCache(Path directory, long maxBytes) throws IOException {
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+        Files.createDirectories(directory);
+
+        List<Path> files = new ArrayList<>();
+        try (Stream<Path> listing = Files.list(directory)) {
+            listing.forEach(files::add);
+        }
+        files.sort(Comparator.comparing(ResultCache::lastModified));
+        for (Path file : files) {
+            String name = file.getFileName().toString();
+            if (name.endsWith(".tmp")) {
+                Files.deleteIfExists(file);
+            } else if (name.endsWith(SUFFIX)) {
+                long size = Files.size(file);
+                entries.put(name.substring(0, name.length() - SUFFIX.length()), size);
+                totalBytes += size;
+            }
+        }
+        synchronized (this) {
+            evict(null);
+        }
+    }
+
+    /** Cache key for filtering the given file's current contents with the given filter. */
+    public String keyFor(Path input, Filter filter) throws IOException {
+        MessageDigest digest = sha256();
+        byte[] buffer = new byte[64 * 1024];
+        try (InputStream in = Files.newInputStream(input)) {
+            for (int n = in.read(buffer); n > 0; n = in.read(buffer)) {
+                digest.update(buffer, 0, n);
+            }
+        }
+        String parameters = "|" + filter.getParameters()
+                + "|border=" + BORDER_MODE
+                + "|v" + FORMAT_VERSION;
+        digest.update(parameters.getBytes(StandardCharsets.UTF_8));
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    /** The cached result, or null on a miss. */
+    public BufferedImage get(String key) throws IOException {
+        synchronized (this) {
+            if (!entries.containsKey(key)) {
+                misses++;
+                return null;
+            }
+        }
+
+        Path file = fileFor(key);
+        BufferedImage image;
+        try {
+            image = ImageCodec.read(file);
+        } catch (IOException e) {
+            image = null;
+        }
+        synchronized (this) {
+            if (image == null) {
+                // Evicted by another worker or process, or unreadable: drop it and report a miss
+                Long size = entries.remove(key);
+                totalBytes -= size == null ? 0 : size;
+                misses++;
+                return null;
+            }
+            entries.get(key);
+            hits++;
+        }
+        try {
+            Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+        } catch (IOException e) {
+            // LRU order across restarts is best effort
+        }
+        return image;
+    }
+
+    public void put(String key, BufferedImage image) throws IOException {
+        Path temp = Files.createTempFile(directory, key, ".tmp");
+        try {
+            if (!ImageCodec.write(image, "png", temp.toFile())) {
+                throw new IOException("No PNG writer available");
+            }
+            Files.move(temp, fileFor(key), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+
+        long size = Files.size(fileFor(key));
+        synchronized (this) {
+            Long previous = entries.put(key, size);
+            totalBytes += size - (previous == null ? 0 : previous);
+            evict(key);
+        }
+    }
+
+    public synchronized long getSizeBytes() {
+        return totalBytes;
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    // Drops least recently used entries until the cache fits, never the one just written
+    private void evict(String keep) {
+        Iterator<Map.Entry<String, Long>> eldest = entries.entrySet().iterator();
+        while (totalBytes > maxBytes && eldest.hasNext()) {
+            Map.Entry<String, Long> entry = eldest.next();
+            if (entry.getKey().equals(keep)) {
+                continue;
+            }
+            try {
+                Files.deleteIfExists(fileFor(entry.getKey()));
+            } catch (IOException e) {
+                System.err.println("Could not evict cache entry " + entry.getKey() + ": " + e.getMessage());
+                continue;
+            }
+            totalBytes -= entry.getValue();
+            eldest.remove();
+        }
+    }
+
+    private Path fileFor(String key) {
+        return directory.resolve(key + SUFFIX);
+    }
+
+    private static FileTime lastModified(Path file) {
+        try {
+            return Files.getLastModifiedTime(file);
+        } catch (IOException e) {
+            return FileTime.fromMillis(0);
+        }
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is required by every Java platform", e);
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package final_project;
+
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import javax.swing.SwingUtilities;
+
+/**
+ * Small thumbnails of image files, decoded lazily in the background the first time they are
+ * asked for and kept in a bounded LRU, so a list of hundreds of photos costs a few megabytes.
+ * Decoding uses source subsampling (see ImageCodec), so a 20 megapixel JPEG is never held at full
+ * resolution just to draw a 64 pixel icon.
+ */
+public class ThumbnailCache implements Closeable {
+
+    private final int size;
+    private final Map<String, BufferedImage> thumbnails;
+    private final Set<String> loading = ConcurrentHashMap.newKeySet();
+    // Files that could not be decoded, so they are not retried on every repaint
+    private final Set<String> unreadable = ConcurrentHashMap.newKeySet();
+    private final Runnable onLoaded;
+    private final ExecutorService loader = Executors.newFixedThreadPool(2, r -> {
+        Thread thread = new Thread(r, "thumbnail-loader");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Thumbnails fit in size x size; at most capacity are kept. onLoaded runs on the event
+     * dispatch thread whenever a new thumbnail is ready (typically a repaint).
+     */
+    public ThumbnailCache(int size, int capacity, Runnable onLoaded) {
+        this.size = size;
+        this.onLoaded = onLoaded;
+        this.thumbnails = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, BufferedImage> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /** The thumbnail if it is cached; otherwise null, and it is decoded in the background. */
+    public BufferedImage get(String path) {
+        synchronized (thumbnails) {
+            BufferedImage thumbnail = thumbnails.get(path);
+            if (thumbnail != null) {
+                return thumbnail;
+            }
+        }
+        if (!unreadable.contains(path) && loading.add(path)) {
+            loader.execute(() -> {
+                try {
+                    BufferedImage thumbnail = load(new File(path), size);
+                    synchronized (thumbnails) {
+                        thumbnails.put(path, thumbnail);
+                    }
+                    SwingUtilities.invokeLater(onLoaded);
+                } catch (IOException | RuntimeException e) {
+                    unreadable.add(path);
+                } finally {
+                    loading.remove(path);
+                }
+            });
+        }
+        return null;
+    }
+
+    /** Drops a path, e.g. after the file behind it has been moved or rewritten. */
+    public void invalidate(String path) {
+        synchronized (thumbnails) {
+            thumbnails.remove(path);
+        }
+        unreadable.remove(path);
+    }
+
+    @Override
+    public void close() {
+        loader.shutdownNow();
+    }
+
+    static BufferedImage load(File file, int size) throws IOException {
+        // Keep about twice the thumbnail size so the final scale still smooths
+        BufferedImage sampled = ImageCodec.read(file.toPath(), 2 * size, null);
+
+        double scale = Math.min(1.0, (double) size / Math.max(sampled.getWidth(), sampled.getHeight()));
+        int thumbWidth = Math.max(1, (int) Math.round(sampled.getWidth() * scale));
+        int thumbHeight = Math.max(1, (int) Math.round(sampled.getHeight() * scale));
+        BufferedImage thumbnail = new BufferedImage(thumbWidth, thumbHeight, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g2d = thumbnail.createGraphics();
+        g2d.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        g2d.drawImage(sampled, 0, 0, thumbWidth, thumbHeight, null);
+        g2d.dispose();
+        return thumbnail;
+    }
+}
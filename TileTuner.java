@@ -0,0 +1,327 @@
+package final_project;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Calibrates how GaussianBlur.filterParallel cuts a window into BlurTask tiles, and remembers the
+ * result in a local profile file that applyParallel reads from then on.
+ *
+ * A tiling is a shape and a maximum tile area. QUADRANTS splits into near-square tiles, which
+ * keeps the halo each tile has to read small. STRIPS splits into full-width row strips, which
+ * stream whole rows and never cut them short. Small tiles cost ForkJoin overhead and halo re-reads;
+ * large ones stop fitting in cache and balance badly across cores. The best point depends on the
+ * engine, the kernel size and the core count, so calibrate() times every plausible candidate on a
+ * synthetic image for exactly that combination. Candidates whose halo would cost more than the
+ * tile itself are not timed. DIRECT is not calibrated at all: with kernelSize^2 taps per pixel it
+ * is compute-bound whatever the tiling, and at large sigma one probe pass alone would take longer
+ * than the whole budget.
+ *
+ * Without a profile entry the built-in tiling is used: quadrants down to 50000 pixels.
+ */
+public final class TileTuner {
+
+    public enum Shape { QUADRANTS, STRIPS }
+
+    /** How BlurTask decomposes a window: split by shape until a tile has at most maxTilePixels. */
+    public static final class Tiling {
+        public static final Tiling DEFAULT = new Tiling(Shape.QUADRANTS, 50_000);
+
+        public final Shape shape;
+        public final int maxTilePixels;
+
+        public Tiling(Shape shape, int maxTilePixels) {
+            if (maxTilePixels < 1) {
+                throw new IllegalArgumentException("maxTilePixels must be positive: " + maxTilePixels);
+            }
+            this.shape = shape;
+            this.maxTilePixels = maxTilePixels;
+        }
+
+        /** Parses the profile form written by toString(), e.g. "STRIPS:65536". */
+        public static Tiling parse(String text) {
+            int colon = text.indexOf(':');
+            if (colon < 0) {
+                throw new IllegalArgumentException("Not a tiling: " + text);
+            }
+            return new Tiling(Shape.valueOf(text.substring(0, colon).trim()),
+                    Integer.parseInt(text.substring(colon + 1).trim()));
+        }
+
+        @Override
+        public String toString() {
+            return shape + ":" + maxTilePixels;
+        }
+    }
+
+    /**
+     * Tuned tilings keyed by engine, kernel size and pool parallelism, stored as a properties
+     * file (for example "SEPARABLE.k13.t8=STRIPS:131072").
+     */
+    public static final class Profile {
+        private final Path file;
+        private final Map<String, Tiling> entries = new ConcurrentHashMap<>();
+
+        private Profile(Path file) {
+            this.file = file;
+        }
+
+        /** The profile in file, or an empty one bound to file when it does not exist yet. */
+        public static Profile load(Path file) throws IOException {
+            Profile profile = new Profile(file);
+            if (Files.exists(file)) {
+                Properties properties = new Properties();
+                try (Reader in = Files.newBufferedReader(file)) {
+                    properties.load(in);
+                }
+                for (String key : properties.stringPropertyNames()) {
+                    try {
+                        profile.entries.put(key, Tiling.parse(properties.getProperty(key)));
+                    } catch (IllegalArgumentException e) {
+                        System.err.println("Ignoring tiling profile entry " + key + ": " + e.getMessage());
+                    }
+                }
+            }
+            return profile;
+        }
+
+        public Path getFile() {
+            return file;
+        }
+
+        /**
+         * The tiling tuned for this engine and parallelism at the nearest kernel size, or
+         * Tiling.DEFAULT when nothing was tuned for them.
+         */
+        public Tiling lookup(MainApp.GaussianBlur.Engine engine, int kernelSize, int parallelism) {
+            Tiling exact = entries.get(key(engine, kernelSize, parallelism));
+            if (exact != null) {
+                return exact;
+            }
+            String prefix = engine + ".k";
+            String suffix = ".t" + parallelism;
+            Tiling nearest = Tiling.DEFAULT;
+            int bestDistance = Integer.MAX_VALUE;
+            for (Map.Entry<String, Tiling> entry : entries.entrySet()) {
+                String key = entry.getKey();
+                if (key.startsWith(prefix) && key.endsWith(suffix)) {
+                    try {
+                        int size = Integer.parseInt(key.substring(prefix.length(), key.length() - suffix.length()));
+                        if (Math.abs(size - kernelSize) < bestDistance) {
+                            bestDistance = Math.abs(size - kernelSize);
+                            nearest = entry.getValue();
+                        }
+                    } catch (NumberFormatException e) {
+                        // Not one of ours
+                    }
+                }
+            }
+            return nearest;
+        }
+
+        public void put(MainApp.GaussianBlur.Engine engine, int kernelSize, int parallelism, Tiling tiling) {
+            entries.put(key(engine, kernelSize, parallelism), tiling);
+        }
+
+        /** Writes the profile atomically, so a concurrent reader sees the old or the new file. */
+        public synchronized void save() throws IOException {
+            Properties properties = new Properties();
+            new TreeMap<>(entries).forEach((key, tiling) -> properties.setProperty(key, tiling.toString()));
+            Path parent = file.toAbsolutePath().getParent();
+            Files.createDirectories(parent);
+            Path temp = Files.createTempFile(parent, ".tiling", ".tmp");
+            try {
+                try (Writer out = Files.newBufferedWriter(temp)) {
+                    properties.store(out, "BlurTask tilings tuned by TileTuner");
+                }
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+        }
+
+        private static String key(MainApp.GaussianBlur.Engine engine, int kernelSize, int parallelism) {
+            return engine + ".k" + kernelSize + ".t" + parallelism;
+        }
+    }
+
+    // Calibration image: wide enough that strips are realistic, height shrunk for slow kernels
+    private static final int CALIBRATION_WIDTH = 1536;
+    private static final int CALIBRATION_HEIGHT = 1024;
+    private static final long DEFAULT_BUDGET_MILLIS = 2000;
+
+    private static volatile Profile profile;
+
+    private TileTuner() {
+    }
+
+    /**
+     * The profile applyParallel uses: the file named by the blur.tiling.profile system property,
+     * or ~/.parallel-blur/tiling.properties. Loaded on first use; an unreadable file acts as empty.
+     */
+    public static Profile profile() {
+        Profile p = profile;
+        if (p == null) {
+            synchronized (TileTuner.class) {
+                p = profile;
+                if (p == null) {
+                    Path file = defaultProfilePath();
+                    try {
+                        p = Profile.load(file);
+                    } catch (IOException | RuntimeException e) {
+                        System.err.println("Could not read tiling profile " + file + ": " + e.getMessage());
+                        p = new Profile(file);
+                    }
+                    profile = p;
+                }
+            }
+        }
+        return p;
+    }
+
+    /** Replaces the profile applyParallel uses, e.g. one loaded from another file. */
+    public static void setProfile(Profile p) {
+        profile = p;
+    }
+
+    static Path defaultProfilePath() {
+        String configured = System.getProperty("blur.tiling.profile");
+        return configured != null
+                ? Path.of(configured)
+                : Path.of(System.getProperty("user.home"), ".parallel-blur", "tiling.properties");
+    }
+
+    /**
+     * Calibrates blur's engine and kernel size on pool when the profile has no entry for them
+     * yet, and saves the profile. Cheap when already tuned, so it can run at every startup.
+     */
+    public static Tiling ensureTuned(MainApp.GaussianBlur blur, ForkJoinPool pool) {
+        Profile p = profile();
+        int kernelSize = 2 * blur.getKernelRadius() + 1;
+        if (p.entries.containsKey(Profile.key(blur.getEngine(), kernelSize, pool.getParallelism()))) {
+            return p.lookup(blur.getEngine(), kernelSize, pool.getParallelism());
+        }
+        Tiling tiling = calibrate(blur, pool, DEFAULT_BUDGET_MILLIS);
+        p.put(blur.getEngine(), kernelSize, pool.getParallelism(), tiling);
+        try {
+            p.save();
+        } catch (IOException e) {
+            System.err.println("Could not save tiling profile " + p.getFile() + ": " + e.getMessage());
+        }
+        return tiling;
+    }
+
+    /**
+     * Times every candidate tiling for blur's engine and kernel size on pool, spending roughly
+     * budgetMillis in total, and returns the fastest. The calibration image is made shorter for
+     * expensive kernels so each candidate still gets a warmup pass and the best of a few timed
+     * ones, and a stray GC or descheduling does not decide the result. DIRECT gets
+     * Tiling.DEFAULT without any timing.
+     */
+    public static Tiling calibrate(MainApp.GaussianBlur blur, ForkJoinPool pool, long budgetMillis) {
+        if (blur.getEngine() == MainApp.GaussianBlur.Engine.DIRECT) {
+            return Tiling.DEFAULT;
+        }
+        MainApp.GaussianBlur probe = new MainApp.GaussianBlur(blur.getSigma(), blur.getEngine());
+        int width = CALIBRATION_WIDTH;
+        int minHeight = 2 * probe.getRadius() + 64;
+
+        // A short pass with the built-in tiling gives the cost per row
+        probe.setTiling(Tiling.DEFAULT);
+        Filter.Buffer sample = randomBuffer(width, minHeight);
+        time(probe, sample, Filter.Buffer.allocate(0, 0, width, minHeight), pool);
+        double rowNanos = (double) time(probe, sample, Filter.Buffer.allocate(0, 0, width, minHeight), pool) / minHeight;
+
+        int candidateCount = candidates(probe, width, CALIBRATION_HEIGHT, pool.getParallelism()).size();
+        double passNanos = budgetMillis * 1e6 / (4.0 * candidateCount);
+        int height = (int) Math.max(minHeight, Math.min(CALIBRATION_HEIGHT, passNanos / rowNanos));
+        int timedPasses = (int) Math.max(1, Math.min(3, passNanos * 4 / (rowNanos * height) - 1));
+        Filter.Buffer src = randomBuffer(width, height);
+        Filter.Buffer dst = Filter.Buffer.allocate(0, 0, width, height);
+
+        Tiling best = Tiling.DEFAULT;
+        long bestNanos = Long.MAX_VALUE;
+        for (Tiling candidate : candidates(probe, width, height, pool.getParallelism())) {
+            probe.setTiling(candidate);
+            time(probe, src, dst, pool);
+            long fastest = Long.MAX_VALUE;
+            for (int run = 0; run < timedPasses; run++) {
+                fastest = Math.min(fastest, time(probe, src, dst, pool));
+            }
+            if (fastest < bestNanos) {
+                bestNanos = fastest;
+                best = candidate;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Tile areas from 4K to 1M pixels in both shapes, without those whose estimated halo work
+     * exceeds the tile's own or that leave fewer than two tiles per worker on the image.
+     */
+    static List<Tiling> candidates(MainApp.GaussianBlur blur, int width, int height, int parallelism) {
+        List<Tiling> candidates = new ArrayList<>();
+        for (int area = 1 << 12; area <= 1 << 20; area <<= 1) {
+            if ((long) width * height / area < 2L * parallelism) {
+                break;
+            }
+            for (Shape shape : Shape.values()) {
+                if (haloOverhead(blur, shape, area, width) <= 1.0) {
+                    candidates.add(new Tiling(shape, area));
+                }
+            }
+        }
+        if (candidates.isEmpty()) {
+            candidates.add(Tiling.DEFAULT);
+        }
+        return candidates;
+    }
+
+    /**
+     * Extra work per tile pixel caused by the halo. The separable engines redo 2r rows of the
+     * horizontal pass per tile; the direct and box engines read (or run their sums over) the
+     * tile grown by their reach on every side.
+     */
+    static double haloOverhead(MainApp.GaussianBlur blur, Shape shape, int area, int windowWidth) {
+        double tileWidth = shape == Shape.STRIPS ? windowWidth : Math.sqrt(area);
+        double tileHeight = Math.max(1, area / tileWidth);
+        switch (blur.getEngine()) {
+            case SEPARABLE:
+            case VECTOR:
+            case FIXED:
+                return blur.getKernelRadius() / tileHeight;
+            default:
+                int r = blur.getRadius();
+                double haloX = shape == Shape.STRIPS ? 0 : 2.0 * r;
+                return (tileWidth + haloX) * (tileHeight + 2.0 * r) / (tileWidth * tileHeight) - 1;
+        }
+    }
+
+    private static long time(MainApp.GaussianBlur blur, Filter.Buffer src, Filter.Buffer dst, ForkJoinPool pool) {
+        long start = System.nanoTime();
+        blur.filterParallel(src, dst, 0, 0, src.width, src.height, src.width, src.height, pool);
+        return System.nanoTime() - start;
+    }
+
+    private static Filter.Buffer randomBuffer(int width, int height) {
+        Filter.Buffer buffer = Filter.Buffer.allocate(0, 0, width, height);
+        Random random = new Random(42);
+        for (int i = 0; i < buffer.pixels.length; i++) {
+            buffer.pixels[i] = random.nextInt(0x1000000);
+        }
+        return buffer;
+    }
+}
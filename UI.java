@@ -1,29 +1,47 @@
 package final_project;
 
-import javax.imageio.ImageIO;
 import javax.swing.*;
 import javax.swing.border.TitledBorder;
+import javax.swing.event.ChangeEvent;
 import javax.swing.filechooser.FileNameExtensionFilter;
 import java.awt.*;
 import java.awt.event.ActionEvent;
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.time.LocalTime;
 import java.time.format.DateTimeFormatter;
 import java.util.List;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
 import java.util.stream.Collectors;
 
 public class UI extends JFrame {
 
+    private static final int PREVIEW_SIZE = 450;
+    // The slider works in tenths of sigma
+    private static final int SIGMA_STEPS = 10;
+    private static final int THUMBNAIL_SIZE = 64;
+
     private DefaultListModel<String> imageListModel;
+    private JList<String> imageList;
+    private JSlider sigmaSlider;
     private JTextField sigmaField;
     private JTextField threadCountField;
     private JRadioButton sequentialButton, parallelButton;
     private JTextArea outputArea;
     private JLabel originalImageLabel, blurredImageLabel;
-    private List<BufferedImage> lastProcessedImages = new ArrayList<>();
+    // Input path -> blurred file; results are written to disk as they finish and never kept in memory.
+    // Same-named inputs get distinct files (Processor numbers them), so every entry has its own file.
+    private final Map<String, String> results = new ConcurrentHashMap<>();
+    private Path resultDirectory;
+    private final ThumbnailCache thumbnails = new ThumbnailCache(THUMBNAIL_SIZE, 500, () -> imageList.repaint());
+    private final LivePreview preview = new LivePreview(PREVIEW_SIZE, Runtime.getRuntime().availableProcessors(),
+            new PreviewListener());
 
     public UI() {
         setTitle("💻 Gaussian Blur - Parallel vs Sequential");
@@ -47,8 +65,17 @@ public class UI extends JFrame {
         panel.setBorder(new TitledBorder("📁 Loaded Images"));
 
         imageListModel = new DefaultListModel<>();
-        JList<String> imageList = new JList<>(imageListModel);
-        imageList.setVisibleRowCount(10);
+        imageList = new JList<>(imageListModel);
+        imageList.setVisibleRowCount(8);
+        imageList.setCellRenderer(new ImageCellRenderer());
+        // Fixed cell sizes keep the list from rendering (and so decoding) every entry to measure it
+        imageList.setFixedCellHeight(THUMBNAIL_SIZE + 8);
+        imageList.setFixedCellWidth(2 * THUMBNAIL_SIZE + 180);
+        imageList.addListSelectionListener(e -> {
+            if (!e.getValueIsAdjusting()) {
+                requestPreview();
+            }
+        });
         panel.add(new JScrollPane(imageList), BorderLayout.CENTER);
 
         JButton loadButton = new JButton("Load Images");
@@ -67,8 +94,21 @@ public class UI extends JFrame {
 
         controls.add(new JLabel("Sigma (blur strength):"));
         sigmaField = new JTextField("2.0");
+        sigmaField.addActionListener(e -> {
+            try {
+                float sigma = Float.parseFloat(sigmaField.getText());
+                sigmaSlider.setValue(Math.round(sigma * SIGMA_STEPS));
+            } catch (NumberFormatException ex) {
+                JOptionPane.showMessageDialog(this, "Invalid sigma!");
+            }
+        });
         controls.add(sigmaField);
 
+        controls.add(new JLabel("Live preview sigma:"));
+        sigmaSlider = new JSlider(1, 30 * SIGMA_STEPS, 2 * SIGMA_STEPS);
+        sigmaSlider.addChangeListener(this::sigmaChanged);
+        controls.add(sigmaSlider);
+
         controls.add(new JLabel("Thread Count:"));
         threadCountField = new JTextField("4");
         controls.add(threadCountField);
@@ -126,6 +166,21 @@ public class UI extends JFrame {
         outputArea.append("[" + time + "] " + message + "\n");
     }
 
+    private void sigmaChanged(ChangeEvent e) {
+        sigmaField.setText(String.format(Locale.ROOT, "%.1f", (float) sigmaSlider.getValue() / SIGMA_STEPS));
+        requestPreview();
+    }
+
+    // Every slider step or selection starts a new render; the previous one is dropped
+    private void requestPreview() {
+        String path = imageList.getSelectedValue();
+        if (path == null) {
+            preview.cancel();
+            return;
+        }
+        preview.render(path, (float) sigmaSlider.getValue() / SIGMA_STEPS);
+    }
+
     private void loadImages() {
         JFileChooser chooser = new JFileChooser();
         chooser.setMultiSelectionEnabled(true);
@@ -137,6 +192,7 @@ public class UI extends JFrame {
                 imageListModel.addElement(file.getAbsolutePath());
             }
             log("Loaded " + chooser.getSelectedFiles().length + " image(s).");
+            imageList.setSelectedIndex(0);
         }
     }
 
@@ -158,57 +214,105 @@ public class UI extends JFrame {
             return;
         }
 
+        Path outputDirectory;
+        try {
+            outputDirectory = resultDirectory();
+        } catch (IOException ex) {
+            JOptionPane.showMessageDialog(this, "Cannot create a directory for results: " + ex.getMessage());
+            return;
+        }
+        // Unsaved results of the previous run are replaced by this one
+        List<String> discarded = new ArrayList<>(results.values());
+        results.clear();
+        imageList.repaint();
+
         outputArea.setText("");
         log("Starting processing...");
+        boolean sequential = sequentialButton.isSelected();
 
-        SwingWorker<Void, String> worker = new SwingWorker<>() {
+        // Logs go through publish() and results through done(), so Swing is only touched on the EDT
+        SwingWorker<MainApp.ProcessingResult, String> worker = new SwingWorker<>() {
             @Override
-            protected Void doInBackground() {
+            protected MainApp.ProcessingResult doInBackground() throws IOException {
+                for (String path : discarded) {
+                    if (Path.of(path).startsWith(outputDirectory)) {
+                        Files.deleteIfExists(Path.of(path));
+                    }
+                }
                 MainApp.Processor processor = new MainApp.Processor(sigma, threadCount);
-                MainApp.ProcessingResult result;
-
-                long start = System.nanoTime();
-
-                if (sequentialButton.isSelected()) {
-                    result = processor.processSequential(paths);
-                } else {
-                    result = processor.processParallel(paths);
+                processor.setOutputListener((input, output) -> {
+                    results.put(input, output);
+                    SwingUtilities.invokeLater(() -> {
+                        thumbnails.invalidate(output);
+                        imageList.repaint();
+                    });
+                });
+                try {
+                    long start = System.nanoTime();
+                    MainApp.ProcessingResult result = sequential
+                            ? processor.processSequential(paths, outputDirectory.toString())
+                            : processor.processStreaming(paths, outputDirectory.toString());
+                    double seconds = (System.nanoTime() - start) / 1e9;
+                    publish("Processing completed in " + String.format("%.3f", seconds) + " seconds.");
+                    publish("Processed " + result.getImageCount() + " images.");
+                    if (result.getFailureCount() > 0) {
+                        publish(result.getFailureCount() + " image(s) failed.");
+                    }
+                    return result;
+                } finally {
+                    processor.shutdown();
                 }
+            }
 
-                long end = System.nanoTime();
-                double seconds = (end - start) / 1e9;
-                log("Processing completed in " + String.format("%.3f", seconds) + " seconds.");
-                log("Processed " + result.getImages().size() + " images.");
-                processor.shutdown();
-
-                // Preview first image
-                if (!paths.isEmpty() && result.getImages().size() > 0) {
-                    try {
-                        BufferedImage original = ImageIO.read(new File(paths.get(0)));
-                        BufferedImage blurred = result.getImages().get(0);
-
-                        ImageIcon originalIcon = new ImageIcon(original.getScaledInstance(300, 300, Image.SCALE_SMOOTH));
-                        ImageIcon blurredIcon = new ImageIcon(blurred.getScaledInstance(300, 300, Image.SCALE_SMOOTH));
-
-                        originalImageLabel.setIcon(originalIcon);
-                        blurredImageLabel.setIcon(blurredIcon);
-
-                        lastProcessedImages = result.getImages();
+            @Override
+            protected void process(List<String> messages) {
+                messages.forEach(UI.this::log);
+            }
 
-                    } catch (Exception ex) {
-                        log("Error displaying preview: " + ex.getMessage());
-                    }
+            @Override
+            protected void done() {
+                try {
+                    get();
+                } catch (InterruptedException | ExecutionException ex) {
+                    log("Processing failed: " + ex.getMessage());
+                    return;
+                }
+                // The live preview shows the selected image at the same sigma, decoded only once
+                if (imageList.isSelectionEmpty()) {
+                    imageList.setSelectedIndex(0);
                 }
-
-                return null;
             }
         };
 
         worker.execute();
     }
 
+    // A per-session temporary directory, removed again when the application exits
+    private Path resultDirectory() throws IOException {
+        if (resultDirectory == null) {
+            Path directory = Files.createTempDirectory("blur-results");
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                File[] files = directory.toFile().listFiles();
+                if (files != null) {
+                    for (File file : files) {
+                        file.delete();
+                    }
+                }
+                directory.toFile().delete();
+            }));
+            resultDirectory = directory;
+        }
+        return resultDirectory;
+    }
+
+    /**
+     * Saving moves the already encoded results out of the temporary directory (or copies results
+     * that were saved before), so nothing is decoded or re-encoded and the EDT never waits on it.
+     * Files already in the chosen folder are kept: a result whose name is taken, e.g. by the
+     * result of a same-named image from an earlier run, is saved as name_1, name_2 and so on.
+     */
     private void saveOutputImages() {
-        if (lastProcessedImages == null || lastProcessedImages.isEmpty()) {
+        if (results.isEmpty()) {
             JOptionPane.showMessageDialog(this, "No images to save. Please process first.");
             return;
         }
@@ -218,16 +322,128 @@ public class UI extends JFrame {
         chooser.setFileSelectionMode(JFileChooser.DIRECTORIES_ONLY);
 
         if (chooser.showSaveDialog(this) == JFileChooser.APPROVE_OPTION) {
-            File dir = chooser.getSelectedFile();
-            for (int i = 0; i < lastProcessedImages.size(); i++) {
-                try {
-                    File outFile = new File(dir, "blurred_" + i + ".jpg");
-                    ImageIO.write(lastProcessedImages.get(i), "jpg", outFile);
-                } catch (IOException e) {
-                    JOptionPane.showMessageDialog(this, "Failed to save image: " + e.getMessage());
+            Path dir = chooser.getSelectedFile().toPath();
+            Map<String, String> toSave = new HashMap<>(results);
+            new SwingWorker<Integer, String>() {
+                @Override
+                protected Integer doInBackground() {
+                    int saved = 0;
+                    for (Map.Entry<String, String> entry : toSave.entrySet()) {
+                        Path source = Path.of(entry.getValue());
+                        try {
+                            if (source.getParent() != null && Files.isSameFile(source.getParent(), dir)) {
+                                saved++;
+                                continue;
+                            }
+                            Path target = saveUnderFreeName(source, dir);
+                            results.replace(entry.getKey(), entry.getValue(), target.toString());
+                            saved++;
+                        } catch (IOException e) {
+                            publish("Failed to save " + source.getFileName() + ": " + e.getMessage());
+                        }
+                    }
+                    return saved;
                 }
+
+                @Override
+                protected void process(List<String> messages) {
+                    messages.forEach(UI.this::log);
+                }
+
+                @Override
+                protected void done() {
+                    try {
+                        log("Saved " + get() + " image(s) to: " + dir.toAbsolutePath());
+                    } catch (InterruptedException | ExecutionException e) {
+                        log("Save failed: " + e.getMessage());
+                    }
+                    imageList.repaint();
+                }
+            }.execute();
+        }
+    }
+
+    // Moves or copies source into dir under its own name, or name_1, name_2, ... if that is taken
+    private Path saveUnderFreeName(Path source, Path dir) throws IOException {
+        String name = source.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        String stem = dot > 0 ? name.substring(0, dot) : name;
+        String extension = dot > 0 ? name.substring(dot) : "";
+        boolean move = resultDirectory != null && source.startsWith(resultDirectory);
+        for (int n = 0; ; n++) {
+            Path target = dir.resolve(n == 0 ? name : stem + "_" + n + extension);
+            try {
+                return move ? Files.move(source, target) : Files.copy(source, target);
+            } catch (FileAlreadyExistsException e) {
+                // Taken; try the next number
             }
-            log("Images saved to: " + dir.getAbsolutePath());
+        }
+    }
+
+    // File name plus the input's and (once written) the result's thumbnail, both decoded lazily
+    private class ImageCellRenderer extends JPanel implements ListCellRenderer<String> {
+        private final JLabel originalThumbnail = new JLabel();
+        private final JLabel blurredThumbnail = new JLabel();
+        private final JLabel name = new JLabel();
+
+        ImageCellRenderer() {
+            super(new BorderLayout(6, 0));
+            Dimension thumbnailSize = new Dimension(THUMBNAIL_SIZE, THUMBNAIL_SIZE);
+            originalThumbnail.setPreferredSize(thumbnailSize);
+            blurredThumbnail.setPreferredSize(thumbnailSize);
+            originalThumbnail.setHorizontalAlignment(SwingConstants.CENTER);
+            blurredThumbnail.setHorizontalAlignment(SwingConstants.CENTER);
+            JPanel icons = new JPanel(new GridLayout(1, 2, 4, 0));
+            icons.setOpaque(false);
+            icons.add(originalThumbnail);
+            icons.add(blurredThumbnail);
+            add(icons, BorderLayout.WEST);
+            add(name, BorderLayout.CENTER);
+            setBorder(BorderFactory.createEmptyBorder(4, 4, 4, 4));
+        }
+
+        @Override
+        public Component getListCellRendererComponent(JList<? extends String> list, String path, int index,
+                                                      boolean isSelected, boolean cellHasFocus) {
+            String output = results.get(path);
+            originalThumbnail.setIcon(iconFor(path));
+            blurredThumbnail.setIcon(output == null ? null : iconFor(output));
+            name.setText(new File(path).getName() + (output == null ? "" : "  ✓"));
+            setBackground(isSelected ? list.getSelectionBackground() : list.getBackground());
+            name.setForeground(isSelected ? list.getSelectionForeground() : list.getForeground());
+            return this;
+        }
+
+        private Icon iconFor(String path) {
+            BufferedImage thumbnail = thumbnails.get(path);
+            return thumbnail == null ? null : new ImageIcon(thumbnail);
+        }
+    }
+
+    private class PreviewListener implements LivePreview.Listener {
+        @Override
+        public void originalReady(BufferedImage view) {
+            originalImageLabel.setText(null);
+            originalImageLabel.setIcon(new ImageIcon(view));
+        }
+
+        @Override
+        public void blurredUpdated(BufferedImage view, boolean complete, String status) {
+            Icon icon = blurredImageLabel.getIcon();
+            if (icon instanceof ImageIcon && ((ImageIcon) icon).getImage() == view) {
+                blurredImageLabel.repaint();
+            } else {
+                blurredImageLabel.setText(null);
+                blurredImageLabel.setIcon(new ImageIcon(view));
+            }
+            if (complete) {
+                log(status);
+            }
+        }
+
+        @Override
+        public void failed(String message) {
+            log("Preview failed: " + message);
         }
     }
 
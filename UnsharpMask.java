@@ -0,0 +1,92 @@
+package final_project;
+
+/**
+ * Unsharp-mask sharpening: out = in + amount * (in - blur(in)) per channel, rounded and clamped.
+ * The blur is a GaussianBlur of the given sigma and engine, computed per window into a
+ * tile-sized scratch buffer and combined with the input in the same pass. Pixels inside the
+ * blur's border band have no blurred value and are passed through unchanged.
+ */
+public class UnsharpMask implements Filter {
+
+    private final MainApp.GaussianBlur blur;
+    private final float amount;
+    // Point-wise step fused into the output, or null; see fuse()
+    private final PointFilter post;
+    private volatile BufferPool buffers;
+
+    public UnsharpMask(float sigma, float amount) {
+        this(sigma, amount, MainApp.GaussianBlur.Engine.SEPARABLE);
+    }
+
+    public UnsharpMask(float sigma, float amount, MainApp.GaussianBlur.Engine engine) {
+        this(new MainApp.GaussianBlur(sigma, engine), amount, null, null);
+    }
+
+    private UnsharpMask(MainApp.GaussianBlur blur, float amount, PointFilter post, BufferPool buffers) {
+        this.blur = blur;
+        this.amount = amount;
+        this.post = post;
+        this.buffers = buffers;
+    }
+
+    @Override
+    public int getRadius() {
+        return blur.getRadius();
+    }
+
+    @Override
+    public void filter(Buffer src, Buffer dst, int x0, int y0, int x1, int y1, int imageWidth, int imageHeight) {
+        BufferPool pool = buffers;
+        Buffer blurred = Buffer.allocate(pool, x0, y0, x1, y1);
+        blur.filter(src, blurred, x0, y0, x1, y1, imageWidth, imageHeight);
+
+        int offset = blur.getKernelRadius();
+        int vx0 = Math.max(x0, offset);
+        int vy0 = Math.max(y0, offset);
+        int vx1 = Math.min(x1, imageWidth - offset);
+        int vy1 = Math.min(y1, imageHeight - offset);
+        for (int y = y0; y < y1; y++) {
+            int srcRow = (y - src.y) * src.width - src.x;
+            int dstRow = (y - dst.y) * dst.width - dst.x;
+            int blurRow = (y - y0) * blurred.width - x0;
+            boolean rowValid = y >= vy0 && y < vy1;
+            for (int x = x0; x < x1; x++) {
+                int pixel = src.pixels[srcRow + x];
+                if (rowValid && x >= vx0 && x < vx1) {
+                    int smooth = blurred.pixels[blurRow + x];
+                    pixel = (sharpen((pixel >> 16) & 0xFF, (smooth >> 16) & 0xFF) << 16)
+                            | (sharpen((pixel >> 8) & 0xFF, (smooth >> 8) & 0xFF) << 8)
+                            | sharpen(pixel & 0xFF, smooth & 0xFF);
+                }
+                dst.pixels[dstRow + x] = post == null ? pixel : post.apply(pixel);
+            }
+        }
+        blurred.recycle(pool);
+    }
+
+    private int sharpen(int value, int smooth) {
+        return Math.min(255, Math.max(0, Math.round(value + amount * (value - smooth))));
+    }
+
+    @Override
+    public String getParameters() {
+        String parameters = "unsharp(" + blur.getParameters() + "|amount=" + Float.floatToIntBits(amount) + ")";
+        return post == null ? parameters : parameters + ">" + post.getParameters();
+    }
+
+    @Override
+    public UnsharpMask fuse(PointFilter next) {
+        return new UnsharpMask(blur, amount, post == null ? next : post.fuse(next), buffers);
+    }
+
+    @Override
+    public void setMetrics(Metrics metrics) {
+        blur.setMetrics(metrics);
+    }
+
+    @Override
+    public void setBufferPool(BufferPool buffers) {
+        this.buffers = buffers;
+        blur.setBufferPool(buffers);
+    }
+}
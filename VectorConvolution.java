@@ -0,0 +1,125 @@
+package final_project;
+
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Separable Gaussian convolution on the JDK Vector API, used by GaussianBlur's VECTOR engine.
+ * Each source row is unpacked into planar float R/G/B lanes once, both 1D passes apply the
+ * kernel weights with fused multiply-add across a full vector of pixels, and results are
+ * clamped and repacked in vector registers. Row tails narrower than a vector run scalar with
+ * the same fused multiply-adds, so a pixel's value does not depend on whether it lands in a
+ * vector lane or a tail, and tiled output matches sequential output bit for bit.
+ *
+ * GaussianBlur only loads this class reflectively when jdk.incubator.vector is present, so it
+ * must be compiled and run with --add-modules jdk.incubator.vector.
+ */
+final class VectorConvolution implements MainApp.GaussianBlur.SeparableConvolver {
+
+    private static final VectorSpecies<Float> FLOATS = FloatVector.SPECIES_PREFERRED;
+    private static final VectorSpecies<Integer> INTS = IntVector.SPECIES_PREFERRED;
+
+    @Override
+    public void convolve(int[] src, int srcWidth, int[] dst, int dstX, int dstY, int dstStride,
+                         int x0, int y0, int x1, int y1, float[] kernel) {
+        int offset = kernel.length / 2;
+        int cols = x1 - x0;
+        int rows = (y1 - y0) + 2 * offset;
+        int span = cols + 2 * offset;
+
+        float[] rowRed = new float[span];
+        float[] rowGreen = new float[span];
+        float[] rowBlue = new float[span];
+        float[] red = new float[cols * rows];
+        float[] green = new float[cols * rows];
+        float[] blue = new float[cols * rows];
+
+        // Horizontal pass: rows y0 - offset .. y1 + offset - 1, columns x0 - offset .. x1 + offset - 1
+        for (int row = 0; row < rows; row++) {
+            unpack(src, (y0 - offset + row) * srcWidth + x0 - offset, span, rowRed, rowGreen, rowBlue);
+            horizontal(rowRed, red, row * cols, cols, kernel);
+            horizontal(rowGreen, green, row * cols, cols, kernel);
+            horizontal(rowBlue, blue, row * cols, cols, kernel);
+        }
+
+        for (int y = y0; y < y1; y++) {
+            vertical(red, green, blue, (y - y0) * cols, cols, kernel, dst, (y - dstY) * dstStride + x0 - dstX);
+        }
+    }
+
+    private static void unpack(int[] src, int base, int count, float[] red, float[] green, float[] blue) {
+        int i = 0;
+        for (int upper = INTS.loopBound(count); i < upper; i += INTS.length()) {
+            IntVector pixels = IntVector.fromArray(INTS, src, base + i);
+            ((FloatVector) pixels.lanewise(VectorOperators.LSHR, 16).and(0xFF)
+                    .convert(VectorOperators.I2F, 0)).intoArray(red, i);
+            ((FloatVector) pixels.lanewise(VectorOperators.LSHR, 8).and(0xFF)
+                    .convert(VectorOperators.I2F, 0)).intoArray(green, i);
+            ((FloatVector) pixels.and(0xFF)
+                    .convert(VectorOperators.I2F, 0)).intoArray(blue, i);
+        }
+        for (; i < count; i++) {
+            int pixel = src[base + i];
+            red[i] = (pixel >> 16) & 0xFF;
+            green[i] = (pixel >> 8) & 0xFF;
+            blue[i] = pixel & 0xFF;
+        }
+    }
+
+    private static void horizontal(float[] in, float[] out, int outBase, int cols, float[] kernel) {
+        int i = 0;
+        for (int upper = FLOATS.loopBound(cols); i < upper; i += FLOATS.length()) {
+            FloatVector acc = FloatVector.zero(FLOATS);
+            for (int k = 0; k < kernel.length; k++) {
+                acc = FloatVector.fromArray(FLOATS, in, i + k)
+                        .fma(FloatVector.broadcast(FLOATS, kernel[k]), acc);
+            }
+            acc.intoArray(out, outBase + i);
+        }
+        for (; i < cols; i++) {
+            float sum = 0;
+            for (int k = 0; k < kernel.length; k++) {
+                sum = Math.fma(in[i + k], kernel[k], sum);
+            }
+            out[outBase + i] = sum;
+        }
+    }
+
+    private static void vertical(float[] red, float[] green, float[] blue, int base, int cols, float[] kernel,
+                                 int[] dst, int dstBase) {
+        int i = 0;
+        for (int upper = FLOATS.loopBound(cols); i < upper; i += FLOATS.length()) {
+            FloatVector r = FloatVector.zero(FLOATS);
+            FloatVector g = FloatVector.zero(FLOATS);
+            FloatVector b = FloatVector.zero(FLOATS);
+            int idx = base + i;
+            for (int k = 0; k < kernel.length; k++, idx += cols) {
+                FloatVector weight = FloatVector.broadcast(FLOATS, kernel[k]);
+                r = FloatVector.fromArray(FLOATS, red, idx).fma(weight, r);
+                g = FloatVector.fromArray(FLOATS, green, idx).fma(weight, g);
+                b = FloatVector.fromArray(FLOATS, blue, idx).fma(weight, b);
+            }
+            toChannel(r).lanewise(VectorOperators.LSHL, 16)
+                    .or(toChannel(g).lanewise(VectorOperators.LSHL, 8))
+                    .or(toChannel(b))
+                    .intoArray(dst, dstBase + i);
+        }
+        for (; i < cols; i++) {
+            float r = 0, g = 0, b = 0;
+            int idx = base + i;
+            for (int k = 0; k < kernel.length; k++, idx += cols) {
+                r = Math.fma(red[idx], kernel[k], r);
+                g = Math.fma(green[idx], kernel[k], g);
+                b = Math.fma(blue[idx], kernel[k], b);
+            }
+            dst[dstBase + i] = MainApp.GaussianBlur.packRgb(r, g, b);
+        }
+    }
+
+    // Truncates like the scalar (int) cast, then clamps to 0..255
+    private static IntVector toChannel(FloatVector value) {
+        return ((IntVector) value.convert(VectorOperators.F2I, 0)).max(0).min(255);
+    }
+}
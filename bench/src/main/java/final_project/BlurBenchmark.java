@@ -0,0 +1,145 @@
+package final_project;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * JMH benchmarks for GaussianBlur and Processor: one image blurred on the calling thread
+ * (sequential), one image tiled across a pool (forkjoin), and a batch of image files decoded,
+ * blurred and encoded by a Processor (processor). Every engine, image size, sigma and thread
+ * count is a @Param, so a run can be narrowed with -p, e.g. -p engine=SEPARABLE,BOX -p size=1024.
+ * poolMb runs each configuration with a BufferPool of that many MB (0 = none); run with -prof gc
+ * to see the allocation and GC time pooling saves.
+ *
+ *   mvn -B package && java -jar target/benchmarks.jar -prof gc
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+public class BlurBenchmark {
+
+    /** The blur and its input image; shared by every benchmark. */
+    @State(Scope.Benchmark)
+    public static class Blur {
+        @Param({"DIRECT", "SEPARABLE", "VECTOR", "BOX", "FIXED"})
+        public MainApp.GaussianBlur.Engine engine;
+
+        @Param({"512", "1024"})
+        public int size;
+
+        @Param({"2", "8"})
+        public float sigma;
+
+        @Param({"0"})
+        public int poolMb;
+
+        MainApp.GaussianBlur blur;
+        BufferedImage image;
+        // With a pool, outputs are leased and handed back after each operation like a batch would
+        BufferPool buffers;
+
+        @Setup
+        public void setUp() {
+            blur = new MainApp.GaussianBlur(sigma, engine);
+            buffers = poolMb > 0 ? new BufferPool((long) poolMb << 20) : null;
+            blur.setBufferPool(buffers);
+            image = createImage(size, size);
+        }
+    }
+
+    /** Thread count for the parallel benchmarks; sequential does not use it and so is not run per value. */
+    @State(Scope.Benchmark)
+    public static class Threads {
+        @Param({"1", "2", "4", "8"})
+        public int threads;
+
+        ForkJoinPool pool;
+
+        @Setup
+        public void setUp() {
+            pool = MainApp.Processor.newComputePool(threads);
+        }
+
+        @TearDown
+        public void tearDown() {
+            pool.shutdown();
+        }
+    }
+
+    /** A directory of 2 * threads encoded test images and a Processor for them. */
+    @State(Scope.Benchmark)
+    public static class Batch {
+        File directory;
+        List<String> paths;
+        MainApp.Processor processor;
+
+        @Setup
+        public void setUp(Blur blur, Threads threads) throws IOException {
+            directory = Files.createTempDirectory("blur-bench").toFile();
+            MainApp.createTestImages(directory.getAbsolutePath(), Math.max(2, 2 * threads.threads),
+                    blur.size, blur.size);
+            paths = new ArrayList<>();
+            for (File file : Objects.requireNonNull(directory.listFiles())) {
+                paths.add(file.getAbsolutePath());
+            }
+            processor = new MainApp.Processor(blur.sigma, threads.threads, blur.engine);
+            processor.setBufferPool(blur.buffers);
+        }
+
+        @TearDown
+        public void tearDown() {
+            processor.shutdown();
+            for (File file : Objects.requireNonNull(directory.listFiles())) {
+                file.delete();
+            }
+            directory.delete();
+        }
+    }
+
+    @Benchmark
+    public BufferedImage sequential(Blur b) {
+        if (b.buffers == null) {
+            return b.blur.applySequential(b.image);
+        }
+        BufferedImage output = b.blur.applySequential(b.image, b.buffers.leaseImage(b.size, b.size));
+        b.buffers.release(output);
+        return output;
+    }
+
+    @Benchmark
+    public BufferedImage forkjoin(Blur b, Threads t) {
+        if (b.buffers == null) {
+            return b.blur.applyParallel(b.image, t.pool);
+        }
+        BufferedImage output = b.blur.applyParallel(b.image, b.buffers.leaseImage(b.size, b.size), t.pool);
+        b.buffers.release(output);
+        return output;
+    }
+
+    @Benchmark
+    public MainApp.ProcessingResult processor(Batch batch) {
+        return batch.processor.processParallel(batch.paths);
+    }
+
+    private static BufferedImage createImage(int width, int height) {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Random random = new Random(42);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                image.setRGB(x, y, random.nextInt(0x1000000));
+            }
+        }
+        return image;
+    }
+}